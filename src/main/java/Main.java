@@ -1,11 +1,55 @@
+import bdsm.simple.SegmentedUnorderedArray;
+import bdsm.simple.UnorderedArray;
+import bdsm.simple.UnorderedCollection;
+import bdsm.trace.Trace;
+import bdsm.trace.TraceReplay;
 import lombok.AccessLevel;
 import lombok.experimental.FieldDefaults;
 import lombok.extern.log4j.Log4j2;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Replays recorded traces (see {@link bdsm.trace.RecordingUnorderedArray}) against every implementation
+ * and configuration of {@link UnorderedCollection} and logs throughput, latency percentiles and allocation of each.
+ */
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Log4j2
 public class Main {
-    public static void main(String[] args) {
-        log.info("Hello World");
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            log.info("Usage: Main <trace file>...");
+            return;
+        }
+        for (String file : args) {
+            Trace trace = Trace.read(Paths.get(file));
+            log.info(file + ": " + trace.length() + " records, up to " + trace.maxSize() + " items");
+            TraceReplay replay = new TraceReplay(trace);
+            for (Map.Entry<String, Supplier<UnorderedCollection<Integer>>> configuration : configurations(trace).entrySet()) {
+                try {
+                    log.info(replay.replay(configuration.getKey(), configuration.getValue()));
+                } catch (RuntimeException e) {
+                    // One configuration that cannot replay the trace should not cost the results of the others.
+                    log.error(configuration.getKey() + " failed to replay " + file, e);
+                }
+            }
+        }
+    }
+
+    private static Map<String, Supplier<UnorderedCollection<Integer>>> configurations(Trace trace) {
+        Map<String, Supplier<UnorderedCollection<Integer>>> configurations = new LinkedHashMap<>();
+        configurations.put("default", UnorderedArray::new);
+        configurations.put("presized", () -> new UnorderedArray<>(Math.max(1, trace.maxSize())));
+        configurations.put("bloom", () -> {
+            UnorderedArray<Integer> array = new UnorderedArray<>();
+            array.enableBloomFilter();
+            return array;
+        });
+        configurations.put("segmented", SegmentedUnorderedArray::new);
+        return configurations;
     }
 }
@@ -0,0 +1,107 @@
+package bdsm.simple;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Arrays;
+
+/**
+ * A counting Bloom filter over the hash codes of the stored values.
+ * Each value increments {@link #HASH_FUNCTIONS} saturating 8-bit counters, so values can also be removed.
+ * A negative answer from {@link #mightContain(Object)} is definite; a positive answer has to be confirmed.
+ * Values must have a {@link Object#hashCode()} that is consistent with their {@link Object#equals(Object)}.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+class CountingBloomFilter {
+    static final int COUNTERS_PER_ELEMENT = 8;
+    static final int HASH_FUNCTIONS = 5;
+    static final int MAX_COUNTERS = 1 << 30;
+    private static final int SATURATED = 0xFF;
+    byte[] counters;
+    int mask;
+    @Getter
+    long definiteMisses;
+    @Getter
+    long falsePositives;
+
+    CountingBloomFilter(int capacity) {
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        long wanted = Math.min((long) Math.max(1, capacity) * COUNTERS_PER_ELEMENT, MAX_COUNTERS);
+        int length = Integer.highestOneBit((int) wanted - 1) << 1;
+        counters = new byte[Math.max(Long.SIZE, length)];
+        mask = counters.length - 1;
+    }
+
+    /**
+     * Throws the counters away and re-counts the given values in a filter sized for the given capacity.
+     * The statistics survive the rebuild.
+     */
+    void rebuild(int capacity, Object[] values, int count) {
+        allocate(capacity);
+        for (int i = 0; i < count; i++) {
+            add(values[i]);
+        }
+    }
+
+    void add(Object value) {
+        int h1 = Hashing.hash(value);
+        int h2 = Hashing.mix(h1) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int index = (h1 + i * h2) & mask;
+            int counter = counters[index] & SATURATED;
+            if (counter != SATURATED) {
+                counters[index] = (byte) (counter + 1);
+            }
+        }
+    }
+
+    void remove(Object value) {
+        int h1 = Hashing.hash(value);
+        int h2 = Hashing.mix(h1) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            int index = (h1 + i * h2) & mask;
+            int counter = counters[index] & SATURATED;
+            // A saturated counter no longer knows how many values it counts, so it stays saturated.
+            if (counter != SATURATED) {
+                counters[index] = (byte) (counter - 1);
+            }
+        }
+    }
+
+    boolean mightContain(Object value) {
+        int h1 = Hashing.hash(value);
+        int h2 = Hashing.mix(h1) | 1;
+        for (int i = 0; i < HASH_FUNCTIONS; i++) {
+            if (counters[(h1 + i * h2) & mask] == 0) {
+                definiteMisses++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(counters, (byte) 0);
+    }
+
+    /**
+     * Records that a value which {@link #mightContain(Object)} let through was not actually stored.
+     */
+    void recordFalsePositive() {
+        falsePositives++;
+    }
+
+    /**
+     * @return the observed fraction of absent values that the filter failed to reject, or 0 before any miss
+     */
+    double falsePositiveRate() {
+        long negatives = definiteMisses + falsePositives;
+        return negatives == 0 ? 0 : (double) falsePositives / negatives;
+    }
+}
@@ -0,0 +1,89 @@
+package bdsm.simple;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * The multiplicity of every distinct item of an {@link UnorderedArray}, made by {@link UnorderedArray#histogram()}
+ * or {@link UnorderedArray#histogramIdentity()}.
+ * Keys and counts are kept in parallel arrays, so counts are never boxed,
+ * and an open-addressing table over them answers {@link #countOf(Object)} in expected O(1).
+ * Comparison by equals() requires T's hashCode() to be consistent with its equals().
+ */
+@SuppressWarnings("unchecked")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+public class FrequencyHistogram<T> {
+    final boolean identity;
+    final Object[] keys;
+    final int[] counts;
+    // Index + 1 of the key in every slot, 0 for an empty slot.
+    final int[] table;
+    /**
+     * The number of distinct keys.
+     */
+    @Getter
+    int size;
+
+    FrequencyHistogram(T[] items, int count, boolean identity) {
+        this.identity = identity;
+        keys = new Object[count];
+        counts = new int[count];
+        table = new int[Hashing.tableLength(count)];
+        for (int i = 0; i < count; i++) {
+            int slot = slotOf(items[i]);
+            if (table[slot] == 0) {
+                keys[size] = items[i];
+                size++;
+                table[slot] = size;
+            }
+            counts[table[slot] - 1]++;
+        }
+    }
+
+    /**
+     * @return the slot that holds the value, or the empty slot where it would go
+     */
+    private int slotOf(Object value) {
+        int mask = table.length - 1;
+        int slot = Hashing.hash(value, identity) & mask;
+        while (table[slot] != 0 && !Hashing.same(keys[table[slot] - 1], value, identity)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public boolean isIdentity() {
+        return identity;
+    }
+
+    /**
+     * @param index in [0, {@link #size()})
+     */
+    public T key(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+        }
+        return (T) keys[index];
+    }
+
+    /**
+     * @param index in [0, {@link #size()})
+     */
+    public int count(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+        }
+        return counts[index];
+    }
+
+    /**
+     * @return how many times the value occurs, 0 if it does not
+     */
+    public int countOf(T value) {
+        int entry = table[slotOf(value)];
+        return entry == 0 ? 0 : counts[entry - 1];
+    }
+}
@@ -0,0 +1,155 @@
+package bdsm.simple;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Arrays;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+
+/**
+ * Frozen Integer content: the distinct values are sorted and split in blocks of {@link #BLOCK_SIZE}.
+ * Each block keeps its first value, and every value is stored as its distance from that first value,
+ * bit-packed with the fewest bits that fit the largest distance.
+ * The multiplicities are only stored (as run-start offsets) if some value occurs more than once.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class FrozenIntArray extends FrozenUnorderedArray<Integer> {
+    static final int BLOCK_SHIFT = 6;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    int size;
+    int distinctSize;
+    int[] blockBases;
+    long[] packedOffsets;
+    int bitsPerOffset;
+    // Index of the first copy of every distinct value, followed by size. Null when there are no duplicates.
+    int[] starts;
+
+    FrozenIntArray(Object[] items, int size) {
+        this.size = size;
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = (Integer) items[i];
+        }
+        Arrays.sort(sorted);
+        int[] runStarts = new int[size + 1];
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                runStarts[distinct] = i;
+                sorted[distinct] = sorted[i];
+                distinct++;
+            }
+        }
+        runStarts[distinct] = size;
+        distinctSize = distinct;
+        starts = distinct == size ? null : Arrays.copyOf(runStarts, distinct + 1);
+
+        blockBases = new int[(distinct + BLOCK_SIZE - 1) >>> BLOCK_SHIFT];
+        long largestOffset = 0;
+        for (int i = 0; i < distinct; i++) {
+            if ((i & (BLOCK_SIZE - 1)) == 0) {
+                blockBases[i >>> BLOCK_SHIFT] = sorted[i];
+            }
+            largestOffset = Math.max(largestOffset, offset(sorted[i], blockBases[i >>> BLOCK_SHIFT]));
+        }
+        bitsPerOffset = Long.SIZE - Long.numberOfLeadingZeros(largestOffset);
+        packedOffsets = new long[(int) (((long) distinct * bitsPerOffset + Long.SIZE - 1) / Long.SIZE)];
+        if (bitsPerOffset > 0) {
+            for (int i = 0; i < distinct; i++) {
+                pack(i, offset(sorted[i], blockBases[i >>> BLOCK_SHIFT]));
+            }
+        }
+    }
+
+    private static long offset(int value, int base) {
+        return (long) value - base;
+    }
+
+    //<editor-fold desc="Bit packing">
+    private void pack(int index, long offset) {
+        long bit = (long) index * bitsPerOffset;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        packedOffsets[word] |= offset << shift;
+        if (shift + bitsPerOffset > Long.SIZE) {
+            packedOffsets[word + 1] |= offset >>> (Long.SIZE - shift);
+        }
+    }
+
+    private long unpack(int index) {
+        if (bitsPerOffset == 0) {
+            return 0;
+        }
+        long bit = (long) index * bitsPerOffset;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long offset = packedOffsets[word] >>> shift;
+        if (shift + bitsPerOffset > Long.SIZE) {
+            offset |= packedOffsets[word + 1] << (Long.SIZE - shift);
+        }
+        return offset & (-1L >>> (Long.SIZE - bitsPerOffset));
+    }
+
+    private int valueAt(int rank) {
+        return (int) (blockBases[rank >>> BLOCK_SHIFT] + unpack(rank));
+    }
+    //</editor-fold>
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int distinctSize() {
+        return distinctSize;
+    }
+
+    @Override
+    int rankOf(Object value) {
+        // Frozen arrays of a wider type (e.g. Number) may be queried with non-Integer values.
+        if (!(value instanceof Integer) || distinctSize == 0) {
+            return NOT_IN_ARRAY;
+        }
+        int key = (Integer) value;
+        int block = Arrays.binarySearch(blockBases, key);
+        if (block >= 0) {
+            return block << BLOCK_SHIFT;
+        }
+        block = -block - 2;
+        if (block < 0) {
+            return NOT_IN_ARRAY;
+        }
+        long wanted = offset(key, blockBases[block]);
+        int low = block << BLOCK_SHIFT;
+        int high = Math.min(distinctSize, low + BLOCK_SIZE) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long found = unpack(middle);
+            if (found < wanted) {
+                low = middle + 1;
+            } else if (found > wanted) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return NOT_IN_ARRAY;
+    }
+
+    @Override
+    Integer distinct(int rank) {
+        return valueAt(rank);
+    }
+
+    @Override
+    int start(int rank) {
+        return starts == null ? rank : starts[rank];
+    }
+
+    @Override
+    int rankOfIndex(int index) {
+        return rankCovering(starts, index);
+    }
+}
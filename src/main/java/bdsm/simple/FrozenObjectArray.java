@@ -0,0 +1,111 @@
+package bdsm.simple;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+
+/**
+ * Frozen content of any type: the distinct items are sorted by hash code (null hashes to 0).
+ * A lookup binary searches by hash code and compares with equals() only the items that share the hash code.
+ * The hash codes are recomputed during the search rather than stored, so that the frozen form holds no more than
+ * one reference per distinct item, less than the backing array of the source.
+ * The multiplicities are only stored (as run-start offsets) if some item occurs more than once.
+ */
+@SuppressWarnings("unchecked")
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+final class FrozenObjectArray<T> extends FrozenUnorderedArray<T> {
+    int size;
+    Object[] distinct;
+    // Index of the first copy of every distinct item, followed by size. Null when there are no duplicates.
+    int[] starts;
+
+    FrozenObjectArray(T[] items, int size) {
+        this.size = size;
+        Object[] sorted = Arrays.copyOf(items, size, Object[].class);
+        Arrays.sort(sorted, Comparator.comparingInt(Objects::hashCode));
+        Object[] distinctItems = new Object[size];
+        int[] counts = new int[size];
+        int distinctCount = 0;
+        int runStart = 0;
+        for (int i = 0; i < size; i++) {
+            if (i > 0 && Objects.hashCode(sorted[i]) != Objects.hashCode(sorted[i - 1])) {
+                runStart = distinctCount;
+            }
+            int existing = NOT_IN_ARRAY;
+            for (int j = runStart; j < distinctCount; j++) {
+                if (Objects.equals(distinctItems[j], sorted[i])) {
+                    existing = j;
+                    break;
+                }
+            }
+            if (existing == NOT_IN_ARRAY) {
+                distinctItems[distinctCount] = sorted[i];
+                counts[distinctCount] = 1;
+                distinctCount++;
+            } else {
+                counts[existing]++;
+            }
+        }
+        distinct = Arrays.copyOf(distinctItems, distinctCount);
+        if (distinctCount == size) {
+            starts = null;
+        } else {
+            starts = new int[distinctCount + 1];
+            for (int i = 0; i < distinctCount; i++) {
+                starts[i + 1] = starts[i] + counts[i];
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int distinctSize() {
+        return distinct.length;
+    }
+
+    @Override
+    int rankOf(Object value) {
+        int hash = Objects.hashCode(value);
+        int low = 0;
+        int high = distinct.length;
+        // Finds the first distinct item with the hash code.
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Objects.hashCode(distinct[middle]) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int rank = low; rank < distinct.length && Objects.hashCode(distinct[rank]) == hash; rank++) {
+            if (Objects.equals(value, distinct[rank])) {
+                return rank;
+            }
+        }
+        return NOT_IN_ARRAY;
+    }
+
+    @Override
+    T distinct(int rank) {
+        return (T) distinct[rank];
+    }
+
+    @Override
+    int start(int rank) {
+        return starts == null ? rank : starts[rank];
+    }
+
+    @Override
+    int rankOfIndex(int index) {
+        return rankCovering(starts, index);
+    }
+}
@@ -0,0 +1,153 @@
+package bdsm.simple;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+
+/**
+ * An immutable, compacted snapshot of an {@link UnorderedArray}, made by {@link UnorderedArray#freeze()}.
+ * Equal items are stored once, together with their multiplicity, and sorted so that lookups are binary searches.
+ * Because of that, a frozen array has its own order, and it only supports lookups by equals(), not by identity.
+ * Integer content is additionally bit-packed ({@link FrozenIntArray}), everything else is ordered by hash code
+ * ({@link FrozenObjectArray}), which requires T's hashCode() to be consistent with its equals().
+ */
+@SuppressWarnings("unchecked")
+public abstract class FrozenUnorderedArray<T> implements Iterable<T> {
+
+    static <T> FrozenUnorderedArray<T> of(T[] items, int size) {
+        if (size == 0) {
+            return new FrozenObjectArray<>(items, size);
+        }
+        for (int i = 0; i < size; i++) {
+            if (!(items[i] instanceof Integer)) {
+                return new FrozenObjectArray<>(items, size);
+            }
+        }
+        return (FrozenUnorderedArray<T>) new FrozenIntArray(items, size);
+    }
+
+    //<editor-fold desc="Size operations">
+    public abstract int size();
+
+    /**
+     * @return the number of different items
+     */
+    public abstract int distinctSize();
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean isNotEmpty() {
+        return size() > 0;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Retrieval operations">
+    public T get(int index) {
+        if (index >= size()) {
+            throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size());
+        }
+        return distinct(rankOfIndex(index));
+    }
+
+    /**
+     * @return the first index at which the value is found, in the order of the frozen array
+     */
+    public int indexOf(T value) {
+        int rank = rankOf(value);
+        return rank == NOT_IN_ARRAY ? NOT_IN_ARRAY : start(rank);
+    }
+
+    public boolean contains(T value) {
+        return rankOf(value) != NOT_IN_ARRAY;
+    }
+
+    public boolean containsAll(T... values) {
+        for (T value : values) {
+            if (!contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int count(T value) {
+        int rank = rankOf(value);
+        return rank == NOT_IN_ARRAY ? 0 : start(rank + 1) - start(rank);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Distinct items">
+
+    /**
+     * @return the rank of the value among the distinct items, or {@link UnorderedArray#NOT_IN_ARRAY}
+     */
+    abstract int rankOf(Object value);
+
+    abstract T distinct(int rank);
+
+    /**
+     * @return the index of the first copy of the rank-th distinct item; start(distinctSize()) is size()
+     */
+    abstract int start(int rank);
+
+    /**
+     * Binary searches the run-start offsets for the distinct item that covers the index.
+     */
+    static int rankCovering(int[] starts, int index) {
+        if (starts == null) {
+            return index;
+        }
+        int low = 0;
+        int high = starts.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (starts[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    abstract int rankOfIndex(int index);
+    //</editor-fold>
+
+    public UnorderedArray<T> thaw() {
+        UnorderedArray<T> array = new UnorderedArray<>(Math.max(1, size()));
+        for (T item : this) {
+            array.add(item);
+        }
+        return array;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new FrozenIterator();
+    }
+
+    public class FrozenIterator implements Iterator<T> {
+        private int rank = 0;
+        private int index = 0;
+
+        @Override
+        public boolean hasNext() {
+            return index < size();
+        }
+
+        @Override
+        public T next() {
+            if (index >= size()) {
+                throw new NoSuchElementException("Iterated past the last item: " + index + " >= " + size());
+            }
+            while (start(rank + 1) <= index) {
+                rank++;
+            }
+            index++;
+            return distinct(rank);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package bdsm.simple;
+
+/**
+ * Hash functions shared by the hash-based structures of the package.
+ */
+final class Hashing {
+    private Hashing() {
+    }
+
+    /**
+     * Spreads the bits of a hash code (MurmurHash3 finalizer), so that similar hash codes land far apart.
+     */
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    static int hash(Object value) {
+        return mix(value == null ? 0 : value.hashCode());
+    }
+
+    static int identityHash(Object value) {
+        return mix(System.identityHashCode(value));
+    }
+
+    static int hash(Object value, boolean identity) {
+        return identity ? identityHash(value) : hash(value);
+    }
+
+    static boolean same(Object a, Object b, boolean identity) {
+        return a == b || !identity && a != null && a.equals(b);
+    }
+
+    /**
+     * @return the length of an open-addressing table that keeps at most half full with the given number of keys
+     */
+    static int tableLength(int keys) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, keys) * 2 - 1) << 1);
+    }
+}
@@ -0,0 +1,19 @@
+package bdsm.simple;
+
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * What {@link UnorderedArray#diff(UnorderedArray)} found between an array and a desired one:
+ * the items to add to the array and the items to remove from it, so that the two hold the same multiset.
+ */
+@Value
+@Accessors(fluent = true)
+public class MultisetDiff<T> {
+    UnorderedArray<T> added;
+    UnorderedArray<T> removed;
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,375 @@
+package bdsm.simple;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+
+/**
+ * An unordered array that stores its items in fixed-size chunks instead of one backing array.
+ * Growing allocates one more chunk and never copies items, so the latency of add does not depend on the size,
+ * and no chunk is large enough to be a humongous allocation.
+ * Index i lives at chunks[i >>> chunkShift][i & chunkMask]; like {@link UnorderedArray},
+ * removing an item moves the last item (of the last chunk) into its place.
+ */
+@SuppressWarnings("unchecked")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+public class SegmentedUnorderedArray<T> implements UnorderedCollection<T> {
+    public static final int DEFAULT_CHUNK_SHIFT = 12;
+    private static final int DEFAULT_DIRECTORY_SIZE = 8;
+    final int chunkShift;
+    @Getter
+    final int chunkSize;
+    final int chunkMask;
+    Object[][] chunks = new Object[DEFAULT_DIRECTORY_SIZE][];
+    int chunkCount;
+    @Getter
+    int size;
+    int modCount;
+
+    //<editor-fold desc="Constructors">
+
+    /**
+     * @param chunkShift log2 of the number of items per chunk
+     */
+    public SegmentedUnorderedArray(int chunkShift) {
+        if (chunkShift < 0 || chunkShift > 30) {
+            throw new IllegalArgumentException("chunkShift must be in [0, 30]: " + chunkShift);
+        }
+        this.chunkShift = chunkShift;
+        this.chunkSize = 1 << chunkShift;
+        this.chunkMask = chunkSize - 1;
+    }
+
+    public SegmentedUnorderedArray() {
+        this(DEFAULT_CHUNK_SHIFT);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Size operations">
+    public int capacity() {
+        return chunkCount << chunkShift;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isNotEmpty() {
+        return size > 0;
+    }
+
+    protected void addChunk() {
+        if (chunkCount == chunks.length) {
+            // Only the directory of chunk references is copied, never the items.
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        chunks[chunkCount] = new Object[chunkSize];
+        chunkCount++;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Add operations">
+    @Override
+    public void insert(int index, T value) {
+        if (index > size) {
+            throw new IndexOutOfBoundsException("index can't be > size: " + index + " > " + size);
+        }
+        if (size == capacity()) {
+            addChunk();
+        }
+        chunks[size >>> chunkShift][size & chunkMask] = chunks[index >>> chunkShift][index & chunkMask];
+        size++;
+        chunks[index >>> chunkShift][index & chunkMask] = value;
+        modCount++;
+    }
+
+    @Override
+    public void add(T value) {
+        if (size == capacity()) {
+            addChunk();
+        }
+        chunks[size >>> chunkShift][size & chunkMask] = value;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public void addAll(T[] array, int start, int count) {
+        while (capacity() < size + count) {
+            addChunk();
+        }
+        int copied = 0;
+        while (copied < count) {
+            int offset = (size + copied) & chunkMask;
+            int length = Math.min(count - copied, chunkSize - offset);
+            System.arraycopy(array, start + copied, chunks[(size + copied) >>> chunkShift], offset, length);
+            copied += length;
+        }
+        size += count;
+        modCount++;
+    }
+
+    public void addAll(T... array) {
+        addAll(array, 0, array.length);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Retrieval operations">
+    @Override
+    public T get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+        }
+        return (T) chunks[index >>> chunkShift][index & chunkMask];
+    }
+
+    public T first() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Array is empty.");
+        }
+        return (T) chunks[0][0];
+    }
+
+    public T last() {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Array is empty.");
+        }
+        return get(size - 1);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Index Of & Contains">
+    @Override
+    public int indexOfIdentity(T value) {
+        for (int c = 0, base = 0; base < size; c++, base += chunkSize) {
+            Object[] chunk = chunks[c];
+            int length = Math.min(chunkSize, size - base);
+            for (int i = 0; i < length; i++) {
+                if (value == chunk[i]) {
+                    return base + i;
+                }
+            }
+        }
+        return NOT_IN_ARRAY;
+    }
+
+    @Override
+    public int indexOf(T value) {
+        if (value == null) {
+            return indexOfIdentity(null);
+        }
+        for (int c = 0, base = 0; base < size; c++, base += chunkSize) {
+            Object[] chunk = chunks[c];
+            int length = Math.min(chunkSize, size - base);
+            for (int i = 0; i < length; i++) {
+                if (value.equals(chunk[i])) {
+                    return base + i;
+                }
+            }
+        }
+        return NOT_IN_ARRAY;
+    }
+
+    @Override
+    public boolean containsIdentity(T value) {
+        return indexOfIdentity(value) != NOT_IN_ARRAY;
+    }
+
+    @Override
+    public boolean contains(T value) {
+        return indexOf(value) != NOT_IN_ARRAY;
+    }
+
+    public boolean containsAll(T... values) {
+        for (T value : values) {
+            if (!contains(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Remove operations">
+    @Override
+    public T removeIndex(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("index can't be >= size: " + index + " >= " + size);
+        }
+        Object[] chunk = chunks[index >>> chunkShift];
+        T value = (T) chunk[index & chunkMask];
+        size--;
+        Object[] lastChunk = chunks[size >>> chunkShift];
+        chunk[index & chunkMask] = lastChunk[size & chunkMask];
+        lastChunk[size & chunkMask] = null;
+        modCount++;
+        return value;
+    }
+
+    @Override
+    public boolean removeValue(T value) {
+        int index = indexOf(value);
+        if (index == NOT_IN_ARRAY) {
+            return false;
+        }
+        removeIndex(index);
+        return true;
+    }
+
+    @Override
+    public boolean removeValueIdentity(T value) {
+        int index = indexOfIdentity(value);
+        if (index == NOT_IN_ARRAY) {
+            return false;
+        }
+        removeIndex(index);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        for (int c = 0, base = 0; base < size; c++, base += chunkSize) {
+            Arrays.fill(chunks[c], 0, Math.min(chunkSize, size - base), null);
+        }
+        size = 0;
+        modCount++;
+    }
+    //</editor-fold>
+
+    @Override
+    public int countIdentity(T value) {
+        int count = 0;
+        for (int c = 0, base = 0; base < size; c++, base += chunkSize) {
+            Object[] chunk = chunks[c];
+            int length = Math.min(chunkSize, size - base);
+            for (int i = 0; i < length; i++) {
+                if (value == chunk[i]) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int count(T value) {
+        if (value == null) {
+            return countIdentity(null);
+        }
+        int count = 0;
+        for (int c = 0, base = 0; base < size; c++, base += chunkSize) {
+            Object[] chunk = chunks[c];
+            int length = Math.min(chunkSize, size - base);
+            for (int i = 0; i < length; i++) {
+                if (value.equals(chunk[i])) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    //<editor-fold desc="Equals and hashCode">
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof SegmentedUnorderedArray)) {
+            return false;
+        }
+        SegmentedUnorderedArray<T> that = (SegmentedUnorderedArray<T>) obj;
+        if (this.size != that.size) {
+            return false;
+        }
+        boolean[] used = new boolean[size];
+        for (T thatItem : that) {
+            int index = firstFreeIndexWith(used, thatItem);
+            if (index == NOT_IN_ARRAY) {
+                return false;
+            }
+            used[index] = true;
+        }
+        return true;
+    }
+
+    private int firstFreeIndexWith(boolean[] used, T value) {
+        for (int i = 0; i < size; i++) {
+            Object item = chunks[i >>> chunkShift][i & chunkMask];
+            if (!used[i] && (value == item || value != null && value.equals(item))) {
+                return i;
+            }
+        }
+        return NOT_IN_ARRAY;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (T item : this) {
+            // Same item multiset, in any order, should produce the same hash code.
+            hash += item == null ? 0 : item.hashCode();
+        }
+        return hash;
+    }
+    //</editor-fold>
+
+    @Override
+    public Iterator<T> iterator() {
+        return new SegmentedIterator();
+    }
+
+    /**
+     * Walks the chunks in order. Removal behaves as in {@link UnorderedArray.UAIterator#remove()}.
+     */
+    public class SegmentedIterator implements Iterator<T> {
+        private int nextIndex = 0;
+        private int lastReturnedIndex = NOT_IN_ARRAY;
+        private int expectedModCount = modCount;
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < size;
+        }
+
+        @Override
+        public T next() {
+            checkForComodification();
+            if (nextIndex >= size) {
+                throw new NoSuchElementException("Iterated past the last item: " + nextIndex + " >= " + size);
+            }
+            T item = (T) chunks[nextIndex >>> chunkShift][nextIndex & chunkMask];
+            lastReturnedIndex = nextIndex;
+            nextIndex++;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturnedIndex == NOT_IN_ARRAY) {
+                throw new IllegalStateException("next() has not been called since the last remove().");
+            }
+            checkForComodification();
+            removeIndex(lastReturnedIndex);
+            nextIndex = lastReturnedIndex;
+            lastReturnedIndex = NOT_IN_ARRAY;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException("The array was modified outside of this iterator.");
+            }
+        }
+    }
+}
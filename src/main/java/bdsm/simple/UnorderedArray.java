@@ -5,21 +5,34 @@ import lombok.Getter;
 import lombok.experimental.Accessors;
 import lombok.experimental.FieldDefaults;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
 
 @SuppressWarnings("unchecked")
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @Accessors(fluent = true)
 // TODO [2020 Feb 22 Sat 18:50]: Implement collection!
 // TODO [2020 Feb 29 Sat 16:17]: Static constructors, toString
-public class UnorderedArray<T> implements Iterable<T> {
+public class UnorderedArray<T> implements UnorderedCollection<T> {
     public static final int DEFAULT_SIZE = 16;
     public static final double RESIZE_FACTOR = 1.8;
     public static final int NOT_IN_ARRAY = -1;
     T[] items;
     @Getter
     int size;
+    // Counts the structural modifications, so that iterators can detect them.
+    int modCount;
+    CountingBloomFilter bloomFilter;
+    // Open-addressing table of (index + 1)s, kept between calls so that repeated dedupes do not allocate.
+    int[] scratchTable;
+    // The multiplicity of the key at every index of the scratch table, for the in-place multiset operations.
+    int[] scratchCounts;
 
     //<editor-fold desc="Constructors">
     public UnorderedArray(int capacity) {
@@ -69,7 +82,58 @@ public class UnorderedArray<T> implements Iterable<T> {
     }
 
     protected void expandBackingArray() {
-        resize(Math.max(DEFAULT_SIZE / 2, (int) (size * RESIZE_FACTOR)));
+        expandBackingArray(size + 1);
+    }
+
+    /**
+     * Grows by {@link #RESIZE_FACTOR}, or straight to the required capacity if that is not enough.
+     */
+    protected void expandBackingArray(int requiredCapacity) {
+        resize(Math.max(requiredCapacity, Math.max(DEFAULT_SIZE / 2, (int) (size * RESIZE_FACTOR))));
+        if (bloomFilter != null) {
+            bloomFilter.rebuild(items.length, items, size);
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Bloom filter">
+
+    /**
+     * Starts maintaining a counting Bloom filter next to {@link #items}.
+     * While it is enabled, {@link #indexOf(T)}, {@link #contains(T)}, {@link #count(T)} and
+     * {@link #containsAll(T...)} answer most misses without scanning.
+     * Only useful when T's hashCode() is consistent with its equals(), and when most lookups are misses.
+     */
+    public void enableBloomFilter() {
+        if (bloomFilter == null) {
+            bloomFilter = new CountingBloomFilter(items.length);
+            bloomFilter.rebuild(items.length, items, size);
+        }
+    }
+
+    public void disableBloomFilter() {
+        bloomFilter = null;
+    }
+
+    public boolean isBloomFilterEnabled() {
+        return bloomFilter != null;
+    }
+
+    /**
+     * @return the observed fraction of misses that the Bloom filter could not rule out, or 0 if it is disabled
+     */
+    public double bloomFilterFalsePositiveRate() {
+        return bloomFilter == null ? 0 : bloomFilter.falsePositiveRate();
+    }
+
+    private boolean definitelyNotInArray(T value) {
+        return bloomFilter != null && !bloomFilter.mightContain(value);
+    }
+
+    private void countBloomFilterMiss() {
+        if (bloomFilter != null) {
+            bloomFilter.recordFalsePositive();
+        }
     }
     //</editor-fold>
 
@@ -85,6 +149,10 @@ public class UnorderedArray<T> implements Iterable<T> {
         items[size] = items[index];
         size++;
         items[index] = value;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.add(value);
+        }
     }
 
     public void add(T value) {
@@ -93,6 +161,10 @@ public class UnorderedArray<T> implements Iterable<T> {
         }
         items[size] = value;
         size++;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.add(value);
+        }
     }
 
     public void add(T val1, T val2) {
@@ -102,6 +174,11 @@ public class UnorderedArray<T> implements Iterable<T> {
         items[size] = val1;
         items[size + 1] = val2;
         size += 2;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.add(val1);
+            bloomFilter.add(val2);
+        }
     }
 
     public void add(T val1, T val2, T val3) {
@@ -112,6 +189,12 @@ public class UnorderedArray<T> implements Iterable<T> {
         items[size + 1] = val2;
         items[size + 2] = val3;
         size += 3;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.add(val1);
+            bloomFilter.add(val2);
+            bloomFilter.add(val3);
+        }
     }
 
     public void add(T val1, T val2, T val3, T val4) {
@@ -123,6 +206,13 @@ public class UnorderedArray<T> implements Iterable<T> {
         items[size + 2] = val3;
         items[size + 3] = val4;
         size += 4;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.add(val1);
+            bloomFilter.add(val2);
+            bloomFilter.add(val3);
+            bloomFilter.add(val4);
+        }
     }
     //</editor-fold>
 
@@ -130,10 +220,16 @@ public class UnorderedArray<T> implements Iterable<T> {
     public void addAll(T[] array, int start, int count) {
         int requiredCapacity = size + count;
         if (requiredCapacity > items.length) {
-            expandBackingArray();
+            expandBackingArray(requiredCapacity);
         }
         System.arraycopy(array, start, items, size, count);
         size += count;
+        modCount++;
+        if (bloomFilter != null) {
+            for (int i = start; i < start + count; i++) {
+                bloomFilter.add(array[i]);
+            }
+        }
     }
 
     public void addAll(T... array) {
@@ -199,15 +295,24 @@ public class UnorderedArray<T> implements Iterable<T> {
     /**
      * Searches for the given value in {@link #items}, using T's .equals() method for comparison.
      * If the value is null, it invokes and returns {@link #indexOfIdentity(T)}.
+     * If the Bloom filter is enabled and rules the value out, {@link #items} is not scanned at all.
      *
      * @param value the value to search for
      *
      * @return the first index at which the value is found
      */
     public int indexOf(T value) {
-        if (value == null) {
-            return indexOfIdentity(null);
+        if (definitelyNotInArray(value)) {
+            return NOT_IN_ARRAY;
+        }
+        int index = value == null ? indexOfIdentity(null) : indexOfEqual(value);
+        if (index == NOT_IN_ARRAY) {
+            countBloomFilterMiss();
         }
+        return index;
+    }
+
+    private int indexOfEqual(T value) {
         for (int i = 0; i < size; i++) {
             if (value.equals(items[i])) {
                 return i;
@@ -277,6 +382,10 @@ public class UnorderedArray<T> implements Iterable<T> {
         size--;
         items[index] = items[size];
         items[size] = null;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.remove(value);
+        }
         return value;
     }
 
@@ -303,6 +412,10 @@ public class UnorderedArray<T> implements Iterable<T> {
             items[i] = null;
         }
         size = 0;
+        modCount++;
+        if (bloomFilter != null) {
+            bloomFilter.clear();
+        }
     }
     //</editor-fold>
 
@@ -317,9 +430,17 @@ public class UnorderedArray<T> implements Iterable<T> {
     }
 
     public int count(T value) {
-        if (value == null) {
-            return countIdentity(null);
+        if (definitelyNotInArray(value)) {
+            return 0;
+        }
+        int count = value == null ? countIdentity(null) : countEqual(value);
+        if (count == 0) {
+            countBloomFilterMiss();
         }
+        return count;
+    }
+
+    private int countEqual(T value) {
         int count = 0;
         for (int i = 0; i < size; i++) {
             if (value.equals(items[i])) {
@@ -329,6 +450,429 @@ public class UnorderedArray<T> implements Iterable<T> {
         return count;
     }
 
+    //<editor-fold desc="Distinct items">
+
+    /**
+     * Removes every item that equals an item before it, in expected O(n) and in place.
+     * Requires T's hashCode() to be consistent with its equals().
+     *
+     * @return the number of removed items
+     */
+    public int dedupe() {
+        return dedupe(false);
+    }
+
+    /**
+     * Removes every item that is identical (==) to an item before it, in expected O(n) and in place.
+     *
+     * @return the number of removed items
+     */
+    public int dedupeIdentity() {
+        return dedupe(true);
+    }
+
+    private int dedupe(boolean identity) {
+        int mask = clearScratchTable(size);
+        int[] table = scratchTable;
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            T item = items[i];
+            int slot = Hashing.hash(item, identity) & mask;
+            while (table[slot] != 0 && !Hashing.same(items[table[slot] - 1], item, identity)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] != 0) {
+                if (bloomFilter != null) {
+                    bloomFilter.remove(item);
+                }
+                continue;
+            }
+            // Kept items are only ever moved towards the front, over slots that have already been read.
+            items[kept] = item;
+            kept++;
+            table[slot] = kept;
+        }
+        int removed = size - kept;
+        Arrays.fill(items, kept, size, null);
+        size = kept;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Counts the different items, comparing with equals(), in expected O(n).
+     */
+    public int distinctCount() {
+        return distinctCount(false);
+    }
+
+    /**
+     * Counts the different items, comparing identities (==), in expected O(n).
+     */
+    public int distinctCountIdentity() {
+        return distinctCount(true);
+    }
+
+    private int distinctCount(boolean identity) {
+        int mask = clearScratchTable(size);
+        int[] table = scratchTable;
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            T item = items[i];
+            int slot = Hashing.hash(item, identity) & mask;
+            while (table[slot] != 0 && !Hashing.same(items[table[slot] - 1], item, identity)) {
+                slot = (slot + 1) & mask;
+            }
+            if (table[slot] == 0) {
+                table[slot] = i + 1;
+                distinct++;
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * Makes sure that {@link #scratchTable} has an empty front that is large enough for the given number of keys.
+     * A table left larger by a previous call is only used (and cleared) up to the length the keys need.
+     *
+     * @return the mask of the usable front of the table
+     */
+    private int clearScratchTable(int keys) {
+        int length = Hashing.tableLength(keys);
+        if (scratchTable == null || scratchTable.length < length) {
+            scratchTable = new int[length];
+        } else {
+            Arrays.fill(scratchTable, 0, length, 0);
+        }
+        return length - 1;
+    }
+
+    /**
+     * @return the multiplicity of every different item, comparing with equals()
+     */
+    public FrequencyHistogram<T> histogram() {
+        return new FrequencyHistogram<>(items, size, false);
+    }
+
+    /**
+     * @return the multiplicity of every different item, comparing identities (==)
+     */
+    public FrequencyHistogram<T> histogramIdentity() {
+        return new FrequencyHistogram<>(items, size, true);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Multiset operations">
+    // All of them count items with a hash table, in expected O(n + m).
+    // The in-place forms count in the scratch table, so repeating them does not allocate.
+    // Comparison by equals() requires T's hashCode() to be consistent with its equals().
+
+    /**
+     * Keeps max(multiplicity here, multiplicity there) copies of every item, by adding the missing ones.
+     */
+    public void unionInPlace(UnorderedArray<? extends T> other) {
+        unionInPlace(other, false);
+    }
+
+    public void unionInPlaceIdentity(UnorderedArray<? extends T> other) {
+        unionInPlace(other, true);
+    }
+
+    private void unionInPlace(UnorderedArray<? extends T> other, boolean identity) {
+        if (other == this) {
+            return;
+        }
+        // Growing replaces items, but leaves the counted keys as they were in the old array.
+        Object[] keys = items;
+        int mask = countIntoScratch(keys, size, identity);
+        for (int i = 0; i < other.size; i++) {
+            if (!takeOneFromScratch(keys, other.items[i], mask, identity)) {
+                add(other.items[i]);
+            }
+        }
+    }
+
+    /**
+     * Keeps min(multiplicity here, multiplicity there) copies of every item, by removing the others.
+     *
+     * @return the number of removed items
+     */
+    public int intersectionInPlace(UnorderedArray<? extends T> other) {
+        return retainCounted(other, false, true);
+    }
+
+    public int intersectionInPlaceIdentity(UnorderedArray<? extends T> other) {
+        return retainCounted(other, true, true);
+    }
+
+    /**
+     * Removes as many copies of every item as there are in the other array.
+     *
+     * @return the number of removed items
+     */
+    public int differenceInPlace(UnorderedArray<? extends T> other) {
+        return retainCounted(other, false, false);
+    }
+
+    public int differenceInPlaceIdentity(UnorderedArray<? extends T> other) {
+        return retainCounted(other, true, false);
+    }
+
+    /**
+     * Counts the items of the other array off against this one, in a single compacting pass.
+     *
+     * @param counted whether to keep the items that the other array has a copy left of, or the rest
+     */
+    private int retainCounted(UnorderedArray<? extends T> other, boolean identity, boolean counted) {
+        if (other == this) {
+            // Compacting would overwrite the counted keys. Every item has a copy left in itself.
+            int removed = counted ? 0 : size;
+            if (!counted) {
+                clear();
+            }
+            return removed;
+        }
+        Object[] keys = other.items;
+        int mask = countIntoScratch(keys, other.size, identity);
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            T item = items[i];
+            if (takeOneFromScratch(keys, item, mask, identity) == counted) {
+                items[kept] = item;
+                kept++;
+            } else if (bloomFilter != null) {
+                bloomFilter.remove(item);
+            }
+        }
+        int removed = size - kept;
+        Arrays.fill(items, kept, size, null);
+        size = kept;
+        modCount++;
+        return removed;
+    }
+
+    /**
+     * Counts the first count keys in {@link #scratchTable} and {@link #scratchCounts}, which are reused between calls.
+     *
+     * @return the mask of the usable front of the table
+     */
+    private int countIntoScratch(Object[] keys, int count, boolean identity) {
+        int mask = clearScratchTable(count);
+        if (scratchCounts == null || scratchCounts.length < count) {
+            scratchCounts = new int[count];
+        }
+        int[] table = scratchTable;
+        for (int i = 0; i < count; i++) {
+            int slot = scratchSlotOf(keys, keys[i], mask, identity);
+            if (table[slot] == 0) {
+                table[slot] = i + 1;
+                scratchCounts[i] = 1;
+            } else {
+                scratchCounts[table[slot] - 1]++;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * @return the slot of the scratch table that holds the value, or the empty slot where it would go
+     */
+    private int scratchSlotOf(Object[] keys, Object value, int mask, boolean identity) {
+        int[] table = scratchTable;
+        int slot = Hashing.hash(value, identity) & mask;
+        while (table[slot] != 0 && !Hashing.same(keys[table[slot] - 1], value, identity)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Counts one occurrence of the value off the keys counted by {@link #countIntoScratch}.
+     *
+     * @return whether the value still had occurrences left
+     */
+    private boolean takeOneFromScratch(Object[] keys, Object value, int mask, boolean identity) {
+        int entry = scratchTable[scratchSlotOf(keys, value, mask, identity)];
+        if (entry == 0 || scratchCounts[entry - 1] == 0) {
+            return false;
+        }
+        scratchCounts[entry - 1]--;
+        return true;
+    }
+
+    public UnorderedArray<T> union(UnorderedArray<? extends T> other) {
+        UnorderedArray<T> result = new UnorderedArray<>(this);
+        result.unionInPlace(other);
+        return result;
+    }
+
+    public UnorderedArray<T> unionIdentity(UnorderedArray<? extends T> other) {
+        UnorderedArray<T> result = new UnorderedArray<>(this);
+        result.unionInPlaceIdentity(other);
+        return result;
+    }
+
+    public UnorderedArray<T> intersection(UnorderedArray<? extends T> other) {
+        UnorderedArray<T> result = new UnorderedArray<>(this);
+        result.intersectionInPlace(other);
+        return result;
+    }
+
+    public UnorderedArray<T> intersectionIdentity(UnorderedArray<? extends T> other) {
+        UnorderedArray<T> result = new UnorderedArray<>(this);
+        result.intersectionInPlaceIdentity(other);
+        return result;
+    }
+
+    public UnorderedArray<T> difference(UnorderedArray<? extends T> other) {
+        UnorderedArray<T> result = new UnorderedArray<>(this);
+        result.differenceInPlace(other);
+        return result;
+    }
+
+    public UnorderedArray<T> differenceIdentity(UnorderedArray<? extends T> other) {
+        UnorderedArray<T> result = new UnorderedArray<>(this);
+        result.differenceInPlaceIdentity(other);
+        return result;
+    }
+
+    /**
+     * Compares this (actual) array with a desired one.
+     *
+     * @param desired the array this one should become
+     *
+     * @return the items missing here (added) and the items in excess here (removed)
+     */
+    public MultisetDiff<T> diff(UnorderedArray<? extends T> desired) {
+        UnorderedArray<T> added = new UnorderedArray<>(desired);
+        added.differenceInPlace(this);
+        return new MultisetDiff<>(added, difference(desired));
+    }
+
+    public MultisetDiff<T> diffIdentity(UnorderedArray<? extends T> desired) {
+        UnorderedArray<T> added = new UnorderedArray<>(desired);
+        added.differenceInPlaceIdentity(this);
+        return new MultisetDiff<>(added, differenceIdentity(desired));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Reordering operations">
+
+    /**
+     * Moves the items that satisfy the predicate to the front of the array, in a single pass and without copying.
+     *
+     * @param predicate the condition of the items that go first
+     *
+     * @return the split point: the number of items that satisfy the predicate
+     */
+    public int partition(Predicate<? super T> predicate) {
+        int split = 0;
+        for (int i = 0; i < size; i++) {
+            if (predicate.test(items[i])) {
+                swap(split, i);
+                split++;
+            }
+        }
+        modCount++;
+        return split;
+    }
+
+    /**
+     * Finds the item that would be at index k if the array was sorted (quickselect, expected O(n)).
+     * Afterwards, it is at index k, no item before it is greater and no item after it is smaller.
+     *
+     * @param k          the index in sorted order
+     * @param comparator the order
+     *
+     * @return the k-th smallest item
+     */
+    public T nth(int k, Comparator<? super T> comparator) {
+        if (k < 0 || k >= size) {
+            throw new IndexOutOfBoundsException("k must be in [0, " + size + "): " + k);
+        }
+        modCount++;
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            T pivot = items[ThreadLocalRandom.current().nextInt(low, high + 1)];
+            // Three-way partition, so that runs of equal items do not make it quadratic.
+            int less = low;
+            int greater = high;
+            int i = low;
+            while (i <= greater) {
+                int comparison = comparator.compare(items[i], pivot);
+                if (comparison < 0) {
+                    swap(less, i);
+                    less++;
+                    i++;
+                } else if (comparison > 0) {
+                    swap(i, greater);
+                    greater--;
+                } else {
+                    i++;
+                }
+            }
+            if (k < less) {
+                high = less - 1;
+            } else if (k > greater) {
+                low = greater + 1;
+            } else {
+                break;
+            }
+        }
+        return items[k];
+    }
+
+    /**
+     * Moves the k smallest items (per the comparator) to the front of the array, in no particular order.
+     * For the k largest, pass {@link Comparator#reversed()}.
+     *
+     * @param k          the number of items to keep in front, not negative;
+     *                   all of them if it is not smaller than the size
+     * @param comparator the order
+     */
+    public void topK(int k, Comparator<? super T> comparator) {
+        if (k < 0) {
+            throw new IndexOutOfBoundsException("k can't be negative: " + k);
+        }
+        if (k > 0 && k < size) {
+            nth(k - 1, comparator);
+        }
+    }
+
+    public T min(Comparator<? super T> comparator) {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Array is empty.");
+        }
+        T min = items[0];
+        for (int i = 1; i < size; i++) {
+            if (comparator.compare(items[i], min) < 0) {
+                min = items[i];
+            }
+        }
+        return min;
+    }
+
+    public T max(Comparator<? super T> comparator) {
+        if (size == 0) {
+            throw new IndexOutOfBoundsException("Array is empty.");
+        }
+        T max = items[0];
+        for (int i = 1; i < size; i++) {
+            if (comparator.compare(items[i], max) > 0) {
+                max = items[i];
+            }
+        }
+        return max;
+    }
+
+    private void swap(int i, int j) {
+        T item = items[i];
+        items[i] = items[j];
+        items[j] = item;
+    }
+    //</editor-fold>
+
     //<editor-fold desc="Equals and hashCode">
     @Override
     public boolean equals(Object obj) {
@@ -406,12 +950,22 @@ public class UnorderedArray<T> implements Iterable<T> {
         int hash = 0;
         for (int i = 0; i < size; i++) {
             // Same item multiset, in any order, should produce the same hash code.
-            hash += items[i].hashCode();
+            hash += items[i] == null ? 0 : items[i].hashCode();
         }
         return hash;
     }
     //</editor-fold>
 
+    /**
+     * Makes an immutable, compacted copy of this array, see {@link FrozenUnorderedArray}.
+     * This array is left as it is, so it has to be dropped for the freeze to save any memory.
+     *
+     * @return a frozen array with the same items, in an order of its own
+     */
+    public FrozenUnorderedArray<T> freeze() {
+        return FrozenUnorderedArray.of(items, size);
+    }
+
     @Override
     public Iterator<T> iterator() {
         return new UAIterator();
@@ -423,6 +977,8 @@ public class UnorderedArray<T> implements Iterable<T> {
     // So when is the iterator free to be reset?
     public class UAIterator implements Iterator<T> {
         private int nextIndex = 0;
+        private int lastReturnedIndex = NOT_IN_ARRAY;
+        private int expectedModCount = modCount;
 
         @Override
         public boolean hasNext() {
@@ -431,9 +987,36 @@ public class UnorderedArray<T> implements Iterable<T> {
 
         @Override
         public T next() {
+            checkForComodification();
+            if (nextIndex >= size) {
+                throw new NoSuchElementException("Iterated past the last item: " + nextIndex + " >= " + size);
+            }
             T item = (T) items[nextIndex];
+            lastReturnedIndex = nextIndex;
             nextIndex++;
             return item;
         }
+
+        /**
+         * Removes the last returned item with {@link #removeIndex(int)}.
+         * That moves the last item of the array into the freed slot, so the slot is visited again by {@link #next()}.
+         */
+        @Override
+        public void remove() {
+            if (lastReturnedIndex == NOT_IN_ARRAY) {
+                throw new IllegalStateException("next() has not been called since the last remove().");
+            }
+            checkForComodification();
+            removeIndex(lastReturnedIndex);
+            nextIndex = lastReturnedIndex;
+            lastReturnedIndex = NOT_IN_ARRAY;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException("The array was modified outside of this iterator.");
+            }
+        }
     }
 }
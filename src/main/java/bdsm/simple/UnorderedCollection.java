@@ -0,0 +1,39 @@
+package bdsm.simple;
+
+/**
+ * The operations that every unordered array implementation supports.
+ * Removing an item moves another one into its index, so indices are only stable until the next removal.
+ */
+public interface UnorderedCollection<T> extends Iterable<T> {
+    int size();
+
+    boolean isEmpty();
+
+    void insert(int index, T value);
+
+    void add(T value);
+
+    void addAll(T[] array, int start, int count);
+
+    T get(int index);
+
+    int indexOfIdentity(T value);
+
+    int indexOf(T value);
+
+    boolean containsIdentity(T value);
+
+    boolean contains(T value);
+
+    int countIdentity(T value);
+
+    int count(T value);
+
+    T removeIndex(int index);
+
+    boolean removeValue(T value);
+
+    boolean removeValueIdentity(T value);
+
+    void clear();
+}
@@ -0,0 +1,69 @@
+package bdsm.trace;
+
+/**
+ * The {@link bdsm.simple.UnorderedArray} operations that a trace can hold.
+ * The ordinal is the opcode in the binary trace, so constants may only be appended.
+ */
+public enum Operation {
+    ADD,
+    INSERT,
+    /**
+     * A bulk add. Its argument is the number of {@link #VALUE} records that follow it.
+     */
+    ADD_ALL,
+    VALUE,
+    GET,
+    REMOVE_INDEX,
+    REMOVE_VALUE,
+    REMOVE_VALUE_IDENTITY,
+    INDEX_OF,
+    INDEX_OF_IDENTITY,
+    CONTAINS,
+    CONTAINS_IDENTITY,
+    COUNT,
+    COUNT_IDENTITY,
+    /**
+     * Its argument is the size of the other object if it is an array, {@link RecordingUnorderedArray#EQUALS_SELF}
+     * if it is the array itself, and {@link bdsm.simple.UnorderedArray#NOT_IN_ARRAY} otherwise.
+     */
+    EQUALS,
+    HASH_CODE,
+    /**
+     * Its argument is the number of items the iteration stepped over, and it hits if it reached the end.
+     */
+    ITERATE,
+    CLEAR,
+    /**
+     * Its argument is the number of removed items.
+     */
+    DEDUPE,
+    DEDUPE_IDENTITY,
+    /**
+     * A multiset operation with another array. Its argument is the number of {@link #VALUE} records that follow it,
+     * which hold the items of the other array.
+     */
+    UNION_IN_PLACE,
+    UNION_IN_PLACE_IDENTITY,
+    INTERSECTION_IN_PLACE,
+    INTERSECTION_IN_PLACE_IDENTITY,
+    DIFFERENCE_IN_PLACE,
+    DIFFERENCE_IN_PLACE_IDENTITY,
+    /**
+     * Its argument is the split point. The predicate itself is not recorded.
+     */
+    PARTITION,
+    /**
+     * Its argument is k. The comparator is not recorded.
+     */
+    NTH,
+    TOP_K;
+
+    private static final Operation[] OPERATIONS = values();
+
+    static Operation of(int opcode) {
+        if (opcode >= OPERATIONS.length) {
+            throw new IllegalArgumentException("Unknown opcode: " + opcode);
+        }
+        return OPERATIONS[opcode];
+    }
+}
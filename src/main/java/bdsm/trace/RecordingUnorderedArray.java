@@ -0,0 +1,621 @@
+package bdsm.trace;
+
+import bdsm.simple.UnorderedArray;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.function.Predicate;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+
+/**
+ * An {@link UnorderedArray} that logs every operation performed on it to a {@link TraceWriter}.
+ * Values are recorded by their hash codes.
+ * Operations that are implemented on top of other operations (e.g. removeValue on indexOf) are recorded once.
+ * Iterating is recorded as {@link Operation#ITERATE} with the number of next() calls, so that a search that stops
+ * early replays as a short walk. The count is written when the iterator reaches the end, when the next operation
+ * is recorded, or on {@link #flush()}; an iteration interrupted by recorded operations becomes one ITERATE
+ * per stretch of next() calls.
+ * Every operation that changes the array is recorded; queries that only compute a new object
+ * (distinctCount, histogram, union, diff, min, freeze and the like) are not.
+ */
+@SuppressWarnings("unchecked")
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class RecordingUnorderedArray<T> extends UnorderedArray<T> {
+    /**
+     * The argument of an {@link Operation#EQUALS} record that compared the array with itself.
+     */
+    static final int EQUALS_SELF = -2;
+    final TraceWriter trace;
+    int depth;
+    // The iteration whose next() calls have not been written yet.
+    RecordingIterator iteration;
+
+    public RecordingUnorderedArray(int capacity, TraceWriter trace) {
+        super(capacity);
+        this.trace = trace;
+    }
+
+    public RecordingUnorderedArray(TraceWriter trace) {
+        this(DEFAULT_SIZE, trace);
+    }
+
+    //<editor-fold desc="Recording">
+    private boolean enter() {
+        return depth++ == 0;
+    }
+
+    private void exit() {
+        depth--;
+    }
+
+    private void record(Operation operation, int sizeBefore, int argument, boolean hit) {
+        flush();
+        trace.write(operation, sizeBefore, argument, false, hit);
+    }
+
+    private void recordValue(Operation operation, int sizeBefore, T value, boolean hit) {
+        flush();
+        trace.write(operation, sizeBefore, value == null ? 0 : value.hashCode(), value == null, hit);
+    }
+
+    private void recordValues(int sizeBefore, T[] values, int start, int count) {
+        record(Operation.ADD_ALL, sizeBefore, count, true);
+        for (int i = start; i < start + count; i++) {
+            recordValue(Operation.VALUE, sizeBefore, values[i], true);
+        }
+    }
+
+    /**
+     * Records a multiset operation followed by the items of the other array.
+     * If the other array records too, reading its items is not recorded in its trace.
+     */
+    private void recordOther(Operation operation, int sizeBefore, UnorderedArray<? extends T> other, boolean hit) {
+        record(operation, sizeBefore, other.size(), hit);
+        RecordingUnorderedArray<?> recording = other instanceof RecordingUnorderedArray
+                ? (RecordingUnorderedArray<?>) other : null;
+        if (recording != null) {
+            recording.depth++;
+        }
+        try {
+            for (int i = 0; i < other.size(); i++) {
+                recordValue(Operation.VALUE, sizeBefore, other.get(i), true);
+            }
+        } finally {
+            if (recording != null) {
+                recording.depth--;
+            }
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Add operations">
+    @Override
+    public void insert(int index, T value) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.insert(index, value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.INSERT, sizeBefore, index, true);
+            recordValue(Operation.VALUE, sizeBefore, value, true);
+        }
+    }
+
+    @Override
+    public void add(T value) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.add(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.ADD, sizeBefore, value, true);
+        }
+    }
+
+    // The fixed-arity adds are recorded as one ADD per value, so that they neither allocate nor replay as ADD_ALL.
+    @Override
+    public void add(T val1, T val2) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.add(val1, val2);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.ADD, sizeBefore, val1, true);
+            recordValue(Operation.ADD, sizeBefore + 1, val2, true);
+        }
+    }
+
+    @Override
+    public void add(T val1, T val2, T val3) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.add(val1, val2, val3);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.ADD, sizeBefore, val1, true);
+            recordValue(Operation.ADD, sizeBefore + 1, val2, true);
+            recordValue(Operation.ADD, sizeBefore + 2, val3, true);
+        }
+    }
+
+    @Override
+    public void add(T val1, T val2, T val3, T val4) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.add(val1, val2, val3, val4);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.ADD, sizeBefore, val1, true);
+            recordValue(Operation.ADD, sizeBefore + 1, val2, true);
+            recordValue(Operation.ADD, sizeBefore + 2, val3, true);
+            recordValue(Operation.ADD, sizeBefore + 3, val4, true);
+        }
+    }
+
+    @Override
+    public void addAll(T[] array, int start, int count) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.addAll(array, start, count);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValues(sizeBefore, array, start, count);
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Retrieval and search operations">
+    @Override
+    public T get(int index) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        T value;
+        try {
+            value = super.get(index);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.GET, sizeBefore, index, true);
+        }
+        return value;
+    }
+
+    @Override
+    public int indexOfIdentity(T value) {
+        boolean outermost = enter();
+        int index;
+        try {
+            index = super.indexOfIdentity(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.INDEX_OF_IDENTITY, size(), value, index != NOT_IN_ARRAY);
+        }
+        return index;
+    }
+
+    @Override
+    public int indexOf(T value) {
+        boolean outermost = enter();
+        int index;
+        try {
+            index = super.indexOf(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.INDEX_OF, size(), value, index != NOT_IN_ARRAY);
+        }
+        return index;
+    }
+
+    @Override
+    public boolean containsIdentity(T value) {
+        boolean outermost = enter();
+        boolean hit;
+        try {
+            hit = super.containsIdentity(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.CONTAINS_IDENTITY, size(), value, hit);
+        }
+        return hit;
+    }
+
+    @Override
+    public boolean contains(T value) {
+        boolean outermost = enter();
+        boolean hit;
+        try {
+            hit = super.contains(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.CONTAINS, size(), value, hit);
+        }
+        return hit;
+    }
+
+    @Override
+    public int countIdentity(T value) {
+        boolean outermost = enter();
+        int count;
+        try {
+            count = super.countIdentity(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.COUNT_IDENTITY, size(), value, count > 0);
+        }
+        return count;
+    }
+
+    @Override
+    public int count(T value) {
+        boolean outermost = enter();
+        int count;
+        try {
+            count = super.count(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.COUNT, size(), value, count > 0);
+        }
+        return count;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Remove operations">
+    @Override
+    public T removeIndex(int index) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        T value;
+        try {
+            value = super.removeIndex(index);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.REMOVE_INDEX, sizeBefore, index, true);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean removeValue(T value) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        boolean hit;
+        try {
+            hit = super.removeValue(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.REMOVE_VALUE, sizeBefore, value, hit);
+        }
+        return hit;
+    }
+
+    @Override
+    public boolean removeValueIdentity(T value) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        boolean hit;
+        try {
+            hit = super.removeValueIdentity(value);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordValue(Operation.REMOVE_VALUE_IDENTITY, sizeBefore, value, hit);
+        }
+        return hit;
+    }
+
+    @Override
+    public void clear() {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.clear();
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.CLEAR, sizeBefore, 0, true);
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Distinct items and multiset operations">
+    @Override
+    public int dedupe() {
+        return dedupe(Operation.DEDUPE, false);
+    }
+
+    @Override
+    public int dedupeIdentity() {
+        return dedupe(Operation.DEDUPE_IDENTITY, true);
+    }
+
+    private int dedupe(Operation operation, boolean identity) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        int removed;
+        try {
+            removed = identity ? super.dedupeIdentity() : super.dedupe();
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(operation, sizeBefore, removed, removed > 0);
+        }
+        return removed;
+    }
+
+    @Override
+    public void unionInPlace(UnorderedArray<? extends T> other) {
+        UnorderedArray<? extends T> before = snapshotIfSelf(other);
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.unionInPlace(other);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordOther(Operation.UNION_IN_PLACE, sizeBefore, before, size() > sizeBefore);
+        }
+    }
+
+    @Override
+    public void unionInPlaceIdentity(UnorderedArray<? extends T> other) {
+        UnorderedArray<? extends T> before = snapshotIfSelf(other);
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.unionInPlaceIdentity(other);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordOther(Operation.UNION_IN_PLACE_IDENTITY, sizeBefore, before, size() > sizeBefore);
+        }
+    }
+
+    @Override
+    public int intersectionInPlace(UnorderedArray<? extends T> other) {
+        return retainCounted(Operation.INTERSECTION_IN_PLACE, other);
+    }
+
+    @Override
+    public int intersectionInPlaceIdentity(UnorderedArray<? extends T> other) {
+        return retainCounted(Operation.INTERSECTION_IN_PLACE_IDENTITY, other);
+    }
+
+    @Override
+    public int differenceInPlace(UnorderedArray<? extends T> other) {
+        return retainCounted(Operation.DIFFERENCE_IN_PLACE, other);
+    }
+
+    @Override
+    public int differenceInPlaceIdentity(UnorderedArray<? extends T> other) {
+        return retainCounted(Operation.DIFFERENCE_IN_PLACE_IDENTITY, other);
+    }
+
+    private int retainCounted(Operation operation, UnorderedArray<? extends T> other) {
+        UnorderedArray<? extends T> before = snapshotIfSelf(other);
+        int sizeBefore = size();
+        boolean outermost = enter();
+        int removed;
+        try {
+            switch (operation) {
+                case INTERSECTION_IN_PLACE:
+                    removed = super.intersectionInPlace(other);
+                    break;
+                case INTERSECTION_IN_PLACE_IDENTITY:
+                    removed = super.intersectionInPlaceIdentity(other);
+                    break;
+                case DIFFERENCE_IN_PLACE:
+                    removed = super.differenceInPlace(other);
+                    break;
+                default:
+                    removed = super.differenceInPlaceIdentity(other);
+                    break;
+            }
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            recordOther(operation, sizeBefore, before, removed > 0);
+        }
+        return removed;
+    }
+
+    /**
+     * An operation with itself changes the items that have to be recorded as the other array, so they are copied first.
+     */
+    private UnorderedArray<? extends T> snapshotIfSelf(UnorderedArray<? extends T> other) {
+        return other == this && depth == 0 ? new UnorderedArray<>(other) : other;
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Reordering operations">
+    @Override
+    public int partition(Predicate<? super T> predicate) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        int split;
+        try {
+            split = super.partition(predicate);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.PARTITION, sizeBefore, split, true);
+        }
+        return split;
+    }
+
+    @Override
+    public T nth(int k, Comparator<? super T> comparator) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        T value;
+        try {
+            value = super.nth(k, comparator);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.NTH, sizeBefore, k, true);
+        }
+        return value;
+    }
+
+    @Override
+    public void topK(int k, Comparator<? super T> comparator) {
+        int sizeBefore = size();
+        boolean outermost = enter();
+        try {
+            super.topK(k, comparator);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.TOP_K, sizeBefore, k, true);
+        }
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Equals, hashCode and iteration">
+    @Override
+    public boolean equals(Object obj) {
+        boolean outermost = enter();
+        boolean equal;
+        try {
+            equal = super.equals(obj);
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            int other = obj == this ? EQUALS_SELF
+                    : obj instanceof UnorderedArray ? ((UnorderedArray<T>) obj).size() : NOT_IN_ARRAY;
+            record(Operation.EQUALS, size(), other, equal);
+        }
+        return equal;
+    }
+
+    @Override
+    public int hashCode() {
+        boolean outermost = enter();
+        int hash;
+        try {
+            hash = super.hashCode();
+        } finally {
+            exit();
+        }
+        if (outermost) {
+            record(Operation.HASH_CODE, size(), 0, true);
+        }
+        return hash;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        if (depth > 0) {
+            return super.iterator();
+        }
+        flush();
+        iteration = new RecordingIterator(super.iterator());
+        return iteration;
+    }
+
+    /**
+     * Writes the next() calls of the iteration in progress, if any.
+     * Call it before closing the writer if the last operation may be an iteration that stopped early.
+     */
+    public void flush() {
+        RecordingIterator pending = iteration;
+        if (pending == null) {
+            return;
+        }
+        if (pending.steps > 0 || !pending.written) {
+            trace.write(Operation.ITERATE, pending.sizeBefore, pending.steps, false, pending.exhausted);
+            pending.steps = 0;
+            pending.written = true;
+            pending.sizeBefore = size();
+        }
+        if (pending.exhausted) {
+            iteration = null;
+        }
+    }
+
+    /**
+     * Counts the next() calls for {@link #flush()}.
+     */
+    private class RecordingIterator implements Iterator<T> {
+        private final Iterator<T> iterator;
+        private int sizeBefore = size();
+        private int steps;
+        private boolean written;
+        private boolean exhausted;
+
+        RecordingIterator(Iterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = iterator.hasNext();
+            if (!hasNext && !exhausted && iteration == this) {
+                exhausted = true;
+                flush();
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            T item = iterator.next();
+            steps++;
+            return item;
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,31 @@
+package bdsm.trace;
+
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+/**
+ * The outcome of replaying a {@link Trace} against one configuration.
+ * Latencies are in nanoseconds.
+ */
+@Value
+@Accessors(fluent = true)
+public class ReplayReport {
+    String configuration;
+    int operations;
+    long totalNanos;
+    long p50;
+    long p99;
+    long p999;
+    long max;
+    long allocatedBytes;
+
+    public double throughput() {
+        return totalNanos == 0 ? 0 : operations * 1e9 / totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s %,12.0f ops/s  p50 %,7d ns  p99 %,9d ns  p99.9 %,9d ns  max %,11d ns  %,d bytes",
+                configuration, throughput(), p50, p99, p999, max, allocatedBytes);
+    }
+}
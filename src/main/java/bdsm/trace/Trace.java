@@ -0,0 +1,172 @@
+package bdsm.trace;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static bdsm.trace.TraceWriter.FULL_ITERATION_VERSION;
+import static bdsm.trace.TraceWriter.HIT_FLAG;
+import static bdsm.trace.TraceWriter.MAGIC;
+import static bdsm.trace.TraceWriter.NULL_FLAG;
+import static bdsm.trace.TraceWriter.OPCODE_MASK;
+import static bdsm.trace.TraceWriter.VERSION;
+
+/**
+ * A fully decoded trace, held in parallel arrays so that replaying it neither decodes nor allocates.
+ * Recorded values are only known by their hash codes, so each distinct hash code becomes one {@link Integer}
+ * instance that stands in for every value with that hash code, for both equality and identity operations.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Accessors(fluent = true)
+public class Trace {
+    @Getter
+    int length;
+    Operation[] operations;
+    int[] sizes;
+    int[] arguments;
+    boolean[] hits;
+    Integer[] values;
+    /**
+     * The largest size the array reached, so that a replay can presize for it.
+     */
+    @Getter
+    int maxSize;
+
+    private Trace(int length, Operation[] operations, int[] sizes, int[] arguments, boolean[] hits,
+                  Integer[] values) {
+        this.length = length;
+        this.operations = operations;
+        this.sizes = sizes;
+        this.arguments = arguments;
+        this.hits = hits;
+        this.values = values;
+        int maxSize = 0;
+        for (int record = 0; record < length; record++) {
+            maxSize = Math.max(maxSize, sizeAfter(record));
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the size after the operation, or an upper bound of it for a union
+     */
+    private int sizeAfter(int record) {
+        switch (operations[record]) {
+            case ADD:
+            case INSERT:
+                return sizes[record] + 1;
+            case ADD_ALL:
+            case UNION_IN_PLACE:
+            case UNION_IN_PLACE_IDENTITY:
+                return sizes[record] + arguments[record];
+            default:
+                return sizes[record];
+        }
+    }
+
+    public static Trace read(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in);
+        }
+    }
+
+    public static Trace read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an UnorderedArray trace.");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION && version != FULL_ITERATION_VERSION) {
+            throw new IOException("Unsupported trace version: " + version + " != " + VERSION);
+        }
+        int capacity = 1024;
+        Operation[] operations = new Operation[capacity];
+        int[] sizes = new int[capacity];
+        int[] arguments = new int[capacity];
+        boolean[] hits = new boolean[capacity];
+        Integer[] values = new Integer[capacity];
+        HashMap<Integer, Integer> canonicalValues = new HashMap<>();
+        int length = 0;
+        int opcode;
+        while ((opcode = in.read()) != -1) {
+            if (length == capacity) {
+                capacity += capacity >> 1;
+                operations = Arrays.copyOf(operations, capacity);
+                sizes = Arrays.copyOf(sizes, capacity);
+                arguments = Arrays.copyOf(arguments, capacity);
+                hits = Arrays.copyOf(hits, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            operations[length] = Operation.of(opcode & OPCODE_MASK);
+            hits[length] = (opcode & HIT_FLAG) != 0;
+            sizes[length] = readVarint(in);
+            int zigZag = readVarint(in);
+            int argument = (zigZag >>> 1) ^ -(zigZag & 1);
+            if (version == FULL_ITERATION_VERSION && operations[length] == Operation.ITERATE) {
+                argument = Integer.MAX_VALUE;
+            }
+            arguments[length] = argument;
+            if ((opcode & NULL_FLAG) == 0) {
+                values[length] = canonicalValues.computeIfAbsent(argument, key -> key);
+            }
+            length++;
+        }
+        return new Trace(length, operations, sizes, arguments, hits, values);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Trace ends in the middle of a record.");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in trace.");
+    }
+
+    public Operation operation(int record) {
+        return operations[record];
+    }
+
+    public int size(int record) {
+        return sizes[record];
+    }
+
+    public int argument(int record) {
+        return arguments[record];
+    }
+
+    public boolean hit(int record) {
+        return hits[record];
+    }
+
+    /**
+     * @return the stand-in for the recorded value, or null if null was recorded
+     */
+    public Integer value(int record) {
+        return values[record];
+    }
+
+    /**
+     * The stand-ins of all records, so that bulk operations can be replayed straight from the trace.
+     */
+    Integer[] values() {
+        return values;
+    }
+}
@@ -0,0 +1,344 @@
+package bdsm.trace;
+
+import bdsm.simple.UnorderedArray;
+import bdsm.simple.UnorderedCollection;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+
+/**
+ * Replays a {@link Trace} against an {@link UnorderedCollection} and measures every operation.
+ * Indices that are no longer valid (the stand-in values may hit where the recorded ones missed)
+ * are wrapped around the current size; operations on an array that is unexpectedly empty are skipped.
+ * {@link Operation#EQUALS} compares the array with an object that reproduces the recorded outcome: itself,
+ * something that is not an array, or a fresh instance of the same configuration that holds a copy of the items,
+ * a copy with one item changed, or as many items as the recorded other array.
+ * It is built outside the measurement, and so is the other array of a multiset operation, from its recorded items.
+ * {@link Operation#ITERATE} steps as many times as recorded, at most to the end of the array.
+ * Predicates and comparators are not recorded, so reorderings put even stand-ins first and sort them naturally.
+ * Collections other than {@link UnorderedArray} lack dedupe and the multiset operations, so their effect is applied
+ * without being measured, which keeps the rest of the replay in step; reorderings are skipped on them.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public class TraceReplay {
+    public static final int WARMUP_RUNS = 2;
+    private static final EnumSet<Operation> MULTISET_OPERATIONS = EnumSet.of(
+            Operation.UNION_IN_PLACE, Operation.UNION_IN_PLACE_IDENTITY,
+            Operation.INTERSECTION_IN_PLACE, Operation.INTERSECTION_IN_PLACE_IDENTITY,
+            Operation.DIFFERENCE_IN_PLACE, Operation.DIFFERENCE_IN_PLACE_IDENTITY);
+    private static final EnumSet<Operation> UNORDERED_ARRAY_OPERATIONS = EnumSet.of(
+            Operation.DEDUPE, Operation.DEDUPE_IDENTITY,
+            Operation.UNION_IN_PLACE, Operation.UNION_IN_PLACE_IDENTITY,
+            Operation.INTERSECTION_IN_PLACE, Operation.INTERSECTION_IN_PLACE_IDENTITY,
+            Operation.DIFFERENCE_IN_PLACE, Operation.DIFFERENCE_IN_PLACE_IDENTITY,
+            Operation.PARTITION, Operation.NTH, Operation.TOP_K);
+    private static final Predicate<Integer> EVEN = value -> value != null && (value & 1) == 0;
+    private static final Comparator<Integer> ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final Trace trace;
+    // Keeps the results of the replayed operations alive, so that the JIT cannot drop the operations.
+    long blackHole;
+
+    public TraceReplay(Trace trace) {
+        this.trace = trace;
+    }
+
+    public ReplayReport replay(String configuration, Supplier<? extends UnorderedCollection<Integer>> factory) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            run(configuration, factory);
+        }
+        return run(configuration, factory);
+    }
+
+    private ReplayReport run(String configuration, Supplier<? extends UnorderedCollection<Integer>> factory) {
+        UnorderedCollection<Integer> array = factory.get();
+        long[] latencies = new long[trace.length()];
+        int operations = 0;
+        long unmeasuredBytes = 0;
+        long totalNanos = 0;
+        long allocatedBefore = allocatedBytes();
+        for (int record = 0; record < trace.length(); record++) {
+            Operation operation = trace.operation(record);
+            if (UNORDERED_ARRAY_OPERATIONS.contains(operation) && !(array instanceof UnorderedArray)) {
+                long applyStart = allocatedBytes();
+                apply(array, record);
+                unmeasuredBytes += allocatedBytes() - applyStart;
+                continue;
+            }
+            Object other = null;
+            if (operation == Operation.EQUALS) {
+                long copyStart = allocatedBytes();
+                other = equalsOther(array, record, factory);
+                unmeasuredBytes += allocatedBytes() - copyStart;
+            } else if (MULTISET_OPERATIONS.contains(operation)) {
+                long copyStart = allocatedBytes();
+                other = otherArray(record);
+                unmeasuredBytes += allocatedBytes() - copyStart;
+            }
+            long start = System.nanoTime();
+            boolean performed = perform(array, record, other);
+            long latency = System.nanoTime() - start;
+            if (performed) {
+                latencies[operations] = latency;
+                operations++;
+                totalNanos += latency;
+            }
+        }
+        long allocated = allocatedBytes() - allocatedBefore - unmeasuredBytes;
+        Arrays.sort(latencies, 0, operations);
+        return new ReplayReport(configuration, operations, totalNanos,
+                percentile(latencies, operations, 0.5),
+                percentile(latencies, operations, 0.99),
+                percentile(latencies, operations, 0.999),
+                operations == 0 ? 0 : latencies[operations - 1],
+                allocated);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean perform(UnorderedCollection<Integer> array, int record, Object other) {
+        Integer value = trace.value(record);
+        int size = array.size();
+        switch (trace.operation(record)) {
+            case ADD:
+                array.add(value);
+                return true;
+            case INSERT:
+                array.insert(Math.min(trace.argument(record), size), trace.value(record + 1));
+                return true;
+            case ADD_ALL:
+                array.addAll(trace.values(), record + 1, trace.argument(record));
+                return true;
+            case VALUE:
+                // Consumed by the preceding ADD_ALL, INSERT or multiset operation.
+                return false;
+            case GET:
+                if (size == 0) {
+                    return false;
+                }
+                blackHole += array.get(trace.argument(record) % size) == null ? 0 : 1;
+                return true;
+            case REMOVE_INDEX:
+                if (size == 0) {
+                    return false;
+                }
+                blackHole += array.removeIndex(trace.argument(record) % size) == null ? 0 : 1;
+                return true;
+            case REMOVE_VALUE:
+                blackHole += array.removeValue(value) ? 1 : 0;
+                return true;
+            case REMOVE_VALUE_IDENTITY:
+                blackHole += array.removeValueIdentity(value) ? 1 : 0;
+                return true;
+            case INDEX_OF:
+                blackHole += array.indexOf(value);
+                return true;
+            case INDEX_OF_IDENTITY:
+                blackHole += array.indexOfIdentity(value);
+                return true;
+            case CONTAINS:
+                blackHole += array.contains(value) ? 1 : 0;
+                return true;
+            case CONTAINS_IDENTITY:
+                blackHole += array.containsIdentity(value) ? 1 : 0;
+                return true;
+            case COUNT:
+                blackHole += array.count(value);
+                return true;
+            case COUNT_IDENTITY:
+                blackHole += array.countIdentity(value);
+                return true;
+            case EQUALS:
+                blackHole += array.equals(other) ? 1 : 0;
+                return true;
+            case HASH_CODE:
+                blackHole += array.hashCode();
+                return true;
+            case ITERATE:
+                Iterator<Integer> iterator = array.iterator();
+                for (int step = 0; step < trace.argument(record) && iterator.hasNext(); step++) {
+                    blackHole += iterator.next() == null ? 0 : 1;
+                }
+                return true;
+            case CLEAR:
+                array.clear();
+                return true;
+            case DEDUPE:
+                blackHole += ((UnorderedArray<Integer>) array).dedupe();
+                return true;
+            case DEDUPE_IDENTITY:
+                blackHole += ((UnorderedArray<Integer>) array).dedupeIdentity();
+                return true;
+            case UNION_IN_PLACE:
+                ((UnorderedArray<Integer>) array).unionInPlace((UnorderedArray<Integer>) other);
+                return true;
+            case UNION_IN_PLACE_IDENTITY:
+                ((UnorderedArray<Integer>) array).unionInPlaceIdentity((UnorderedArray<Integer>) other);
+                return true;
+            case INTERSECTION_IN_PLACE:
+                blackHole += ((UnorderedArray<Integer>) array).intersectionInPlace((UnorderedArray<Integer>) other);
+                return true;
+            case INTERSECTION_IN_PLACE_IDENTITY:
+                blackHole += ((UnorderedArray<Integer>) array)
+                        .intersectionInPlaceIdentity((UnorderedArray<Integer>) other);
+                return true;
+            case DIFFERENCE_IN_PLACE:
+                blackHole += ((UnorderedArray<Integer>) array).differenceInPlace((UnorderedArray<Integer>) other);
+                return true;
+            case DIFFERENCE_IN_PLACE_IDENTITY:
+                blackHole += ((UnorderedArray<Integer>) array)
+                        .differenceInPlaceIdentity((UnorderedArray<Integer>) other);
+                return true;
+            case PARTITION:
+                blackHole += ((UnorderedArray<Integer>) array).partition(EVEN);
+                return true;
+            case NTH:
+                if (size == 0) {
+                    return false;
+                }
+                Integer nth = ((UnorderedArray<Integer>) array).nth(trace.argument(record) % size, ORDER);
+                blackHole += nth == null ? 0 : 1;
+                return true;
+            case TOP_K:
+                ((UnorderedArray<Integer>) array).topK(trace.argument(record), ORDER);
+                return true;
+            default:
+                throw new IllegalStateException("Unhandled operation: " + trace.operation(record));
+        }
+    }
+
+    /**
+     * @return what the array is compared with, so that the comparison takes the path it took when it was recorded
+     */
+    private Object equalsOther(UnorderedCollection<Integer> array, int record,
+                               Supplier<? extends UnorderedCollection<Integer>> factory) {
+        int otherSize = trace.argument(record);
+        if (otherSize == RecordingUnorderedArray.EQUALS_SELF) {
+            return array;
+        }
+        if (otherSize == NOT_IN_ARRAY) {
+            return trace;
+        }
+        UnorderedCollection<Integer> twin = factory.get();
+        for (Integer item : array) {
+            twin.add(item);
+        }
+        if (otherSize != trace.size(record)) {
+            // Only the sizes were compared; the stand-ins may have left the array at the recorded other size.
+            int targetSize = otherSize == array.size() ? otherSize + 1 : otherSize;
+            while (twin.size() > targetSize) {
+                twin.removeIndex(twin.size() - 1);
+            }
+            while (twin.size() < targetSize) {
+                twin.add(null);
+            }
+        } else if (!trace.hit(record) && twin.size() > 0) {
+            twin.removeIndex(twin.size() - 1);
+            twin.add(absentFrom(array));
+        }
+        return twin;
+    }
+
+    private static Integer absentFrom(UnorderedCollection<Integer> array) {
+        int value = Integer.MIN_VALUE;
+        while (array.contains(value)) {
+            value++;
+        }
+        return value;
+    }
+
+    /**
+     * @return the other array of the multiset operation at the record, from the VALUE records that follow it
+     */
+    private UnorderedArray<Integer> otherArray(int record) {
+        return new UnorderedArray<>(trace.values(), record + 1, trace.argument(record));
+    }
+
+    /**
+     * Gives a collection other than {@link UnorderedArray} the items that an operation it lacks would leave,
+     * through the operations of {@link UnorderedCollection}. Reorderings do not change the items, so they are skipped.
+     */
+    private void apply(UnorderedCollection<Integer> array, int record) {
+        switch (trace.operation(record)) {
+            case DEDUPE:
+            case DEDUPE_IDENTITY:
+                Set<Integer> seen = new HashSet<>();
+                for (int i = 0; i < array.size(); ) {
+                    if (seen.add(array.get(i))) {
+                        i++;
+                    } else {
+                        // The last item moves into i, so i is looked at again.
+                        array.removeIndex(i);
+                    }
+                }
+                break;
+            case UNION_IN_PLACE:
+            case UNION_IN_PLACE_IDENTITY:
+                Map<Integer, Integer> here = counts(array);
+                for (int i = record + 1; i <= record + trace.argument(record); i++) {
+                    if (!takeOne(here, trace.value(i))) {
+                        array.add(trace.value(i));
+                    }
+                }
+                break;
+            case INTERSECTION_IN_PLACE:
+            case INTERSECTION_IN_PLACE_IDENTITY:
+            case DIFFERENCE_IN_PLACE:
+            case DIFFERENCE_IN_PLACE_IDENTITY:
+                boolean intersection = trace.operation(record) == Operation.INTERSECTION_IN_PLACE
+                        || trace.operation(record) == Operation.INTERSECTION_IN_PLACE_IDENTITY;
+                Map<Integer, Integer> there = counts(otherArray(record));
+                for (int i = 0; i < array.size(); ) {
+                    if (takeOne(there, array.get(i)) == intersection) {
+                        i++;
+                    } else {
+                        array.removeIndex(i);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Map<Integer, Integer> counts(UnorderedCollection<Integer> array) {
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i < array.size(); i++) {
+            counts.merge(array.get(i), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    private static boolean takeOne(Map<Integer, Integer> counts, Integer value) {
+        Integer count = counts.get(value);
+        if (count == null || count == 0) {
+            return false;
+        }
+        counts.put(value, count - 1);
+        return true;
+    }
+
+    private static long percentile(long[] sortedLatencies, int count, double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        return sortedLatencies[Math.min(count - 1, (int) (count * fraction))];
+    }
+
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
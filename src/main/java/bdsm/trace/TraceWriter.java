@@ -0,0 +1,81 @@
+package bdsm.trace;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes operation records in the compact binary trace format.
+ * The trace starts with {@link #MAGIC} and {@link #VERSION}.
+ * Every record is one opcode byte (ordinal in the low 6 bits, null-value flag in bit 6, hit flag in bit 7),
+ * followed by the size of the array as a varint and the argument as a zig-zag varint.
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@Accessors(fluent = true)
+public class TraceWriter implements Closeable {
+    static final int MAGIC = 0x55415452; // "UATR"
+    // Version 2 records the number of steps of an ITERATE; version 1 traces are read as full iterations.
+    static final int VERSION = 2;
+    static final int FULL_ITERATION_VERSION = 1;
+    static final int OPCODE_MASK = 0x3F;
+    static final int NULL_FLAG = 0x40;
+    static final int HIT_FLAG = 0x80;
+    final DataOutputStream out;
+    @Getter
+    long records;
+
+    public TraceWriter(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public TraceWriter(Path path) throws IOException {
+        this(Files.newOutputStream(path));
+    }
+
+    public void write(Operation operation, int size, int argument, boolean isNull, boolean hit) {
+        int opcode = operation.ordinal();
+        if (isNull) {
+            opcode |= NULL_FLAG;
+        }
+        if (hit) {
+            opcode |= HIT_FLAG;
+        }
+        try {
+            out.writeByte(opcode);
+            writeVarint(size);
+            writeVarint((argument << 1) ^ (argument >> 31));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        records++;
+    }
+
+    private void writeVarint(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
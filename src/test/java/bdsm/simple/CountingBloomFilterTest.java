@@ -0,0 +1,65 @@
+package bdsm.simple;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CountingBloomFilterTest {
+    CountingBloomFilter filter = new CountingBloomFilter(100);
+
+    @Test
+    public void noFalseNegatives() {
+        for (int i = 0; i < 100; i++) {
+            filter.add(i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(filter.mightContain(i));
+        }
+    }
+
+    @Test
+    public void removeCountsDown() {
+        filter.add("a");
+        filter.add("a");
+        filter.remove("a");
+        assertTrue(filter.mightContain("a"));
+        filter.remove("a");
+        assertFalse(filter.mightContain("a"));
+    }
+
+    @Test
+    public void nullIsCounted() {
+        assertFalse(filter.mightContain(null));
+        filter.add(null);
+        assertTrue(filter.mightContain(null));
+    }
+
+    @Test
+    public void clear() {
+        filter.add(1);
+        filter.clear();
+        assertFalse(filter.mightContain(1));
+    }
+
+    @Test
+    public void falsePositiveRate() {
+        assertEquals(0, filter.falsePositiveRate(), 0);
+        filter.mightContain(1);
+        filter.recordFalsePositive();
+        assertEquals(0.5, filter.falsePositiveRate(), 0);
+        assertEquals(1, filter.definiteMisses());
+        assertEquals(1, filter.falsePositives());
+    }
+
+    @Test
+    public void rebuildKeepsContentAndStatistics() {
+        Integer[] values = {1, 2, 3};
+        filter.mightContain(4);
+        filter.rebuild(1000, values, values.length);
+        assertTrue(filter.mightContain(1));
+        assertTrue(filter.mightContain(3));
+        assertEquals(1, filter.definiteMisses());
+    }
+}
@@ -0,0 +1,156 @@
+package bdsm.simple;
+
+import beans.Person;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FrozenUnorderedArrayTest {
+    UnorderedArray<Integer> integers = new UnorderedArray<>();
+    UnorderedArray<String> strings = new UnorderedArray<>();
+
+    //<editor-fold desc="Integer content">
+    @Test
+    public void integersAreBitPacked() {
+        integers.addAll(30, 10, 20, 10, -5, 10);
+        FrozenUnorderedArray<Integer> frozen = integers.freeze();
+        assertTrue(frozen instanceof FrozenIntArray);
+        assertEquals(6, frozen.size());
+        assertEquals(4, frozen.distinctSize());
+        assertEquals(3, frozen.count(10));
+        assertEquals(1, frozen.count(-5));
+        assertEquals(0, frozen.count(15));
+        assertTrue(frozen.containsAll(30, 20, -5));
+        assertFalse(frozen.contains(null));
+        assertEquals(NOT_IN_ARRAY, frozen.indexOf(40));
+    }
+
+    @Test
+    public void integerIndicesAreSorted() {
+        integers.addAll(3, 1, 2, 1);
+        FrozenUnorderedArray<Integer> frozen = integers.freeze();
+        assertEquals(1, (int) frozen.get(0));
+        assertEquals(1, (int) frozen.get(1));
+        assertEquals(2, (int) frozen.get(2));
+        assertEquals(3, (int) frozen.get(3));
+        assertEquals(2, frozen.indexOf(2));
+        assertEquals(3, frozen.indexOf(3));
+    }
+
+    @Test
+    public void integerExtremes() {
+        integers.addAll(Integer.MIN_VALUE, Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
+        FrozenUnorderedArray<Integer> frozen = integers.freeze();
+        assertEquals(1, frozen.count(Integer.MIN_VALUE));
+        assertEquals(2, frozen.count(Integer.MAX_VALUE));
+        assertEquals(1, frozen.count(0));
+        assertFalse(frozen.contains(1));
+    }
+
+    @Test
+    public void manyRandomIntegers() {
+        Random random = new Random(42);
+        HashMap<Integer, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            int value = random.nextInt(3000) * 7 - 10000;
+            integers.add(value);
+            counts.merge(value, 1, Integer::sum);
+        }
+        FrozenUnorderedArray<Integer> frozen = integers.freeze();
+        assertEquals(counts.size(), frozen.distinctSize());
+        for (int value = -10010; value < 11010; value++) {
+            assertEquals((int) counts.getOrDefault(value, 0), frozen.count(value));
+        }
+        assertEquals(integers, frozen.thaw());
+    }
+
+    @Test
+    public void singleValue() {
+        integers.addAll(7, 7, 7);
+        FrozenUnorderedArray<Integer> frozen = integers.freeze();
+        assertEquals(3, frozen.count(7));
+        assertEquals(7, (int) frozen.get(2));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Object content">
+    @Test
+    public void objectsAreDeduplicated() {
+        strings.addAll("b", "a", null, "b", "c", null, "b");
+        FrozenUnorderedArray<String> frozen = strings.freeze();
+        assertTrue(frozen instanceof FrozenObjectArray);
+        assertEquals(7, frozen.size());
+        assertEquals(4, frozen.distinctSize());
+        assertEquals(3, frozen.count("b"));
+        assertEquals(2, frozen.count(null));
+        assertEquals(0, frozen.count("d"));
+        assertEquals("b", frozen.get(frozen.indexOf("b") + 2));
+        assertEquals(strings, frozen.thaw());
+    }
+
+    @Test
+    public void hashCollisions() {
+        // "Aa" and "BB" have the same hash code.
+        strings.addAll("Aa", "BB", "Aa");
+        FrozenUnorderedArray<String> frozen = strings.freeze();
+        assertEquals(2, frozen.count("Aa"));
+        assertEquals(1, frozen.count("BB"));
+        assertFalse(frozen.contains("C#"));
+    }
+
+    @Test
+    public void mixedContentIsNotBitPacked() {
+        UnorderedArray<Object> objects = new UnorderedArray<>();
+        objects.addAll(1, "1", 1L);
+        FrozenUnorderedArray<Object> frozen = objects.freeze();
+        assertTrue(frozen instanceof FrozenObjectArray);
+        assertEquals(1, frozen.count(1));
+        assertEquals(1, frozen.count(1L));
+    }
+
+    @Test
+    public void emptyArray() {
+        FrozenUnorderedArray<Integer> frozen = integers.freeze();
+        assertTrue(frozen.isEmpty());
+        assertFalse(frozen.contains(1));
+        assertFalse(frozen.iterator().hasNext());
+    }
+
+    @Test
+    public void emptyNonIntegerArray() {
+        FrozenUnorderedArray<String> frozen = strings.freeze();
+        assertFalse(frozen.contains("a"));
+        assertEquals(0, frozen.count("a"));
+        assertEquals(NOT_IN_ARRAY, frozen.indexOf("a"));
+    }
+
+    @Test
+    public void integerContentQueriedWithOtherTypes() {
+        UnorderedArray<Number> numbers = new UnorderedArray<>();
+        numbers.addAll(1, 2, 2);
+        FrozenUnorderedArray<Number> frozenNumbers = numbers.freeze();
+        assertTrue((Object) frozenNumbers instanceof FrozenIntArray);
+        assertFalse(frozenNumbers.contains(1L));
+        assertEquals(0, frozenNumbers.count(2.0));
+        assertEquals(2, frozenNumbers.count(2));
+        UnorderedArray<Object> objects = new UnorderedArray<>();
+        objects.addAll(1, 2);
+        FrozenUnorderedArray<Object> frozenObjects = objects.freeze();
+        assertFalse(frozenObjects.contains("x"));
+        assertEquals(NOT_IN_ARRAY, frozenObjects.indexOf("x"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfBounds() {
+        UnorderedArray<Person> people = new UnorderedArray<>();
+        people.add(new Person("George", 23));
+        people.freeze().get(1);
+    }
+    //</editor-fold>
+}
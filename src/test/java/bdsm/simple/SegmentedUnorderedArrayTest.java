@@ -0,0 +1,202 @@
+package bdsm.simple;
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+
+import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedUnorderedArrayTest {
+    // Chunks of 4 items, so that a handful of items already spans several chunks.
+    SegmentedUnorderedArray<Integer> integers = new SegmentedUnorderedArray<>(2);
+
+    private void addRange(int count) {
+        for (int i = 0; i < count; i++) {
+            integers.add(i);
+        }
+    }
+
+    //<editor-fold desc="Growth tests">
+    @Test
+    public void startsWithoutChunks() {
+        assertEquals(0, integers.capacity());
+        assertTrue(integers.isEmpty());
+        assertEquals(4, integers.chunkSize());
+    }
+
+    @Test
+    public void growsOneChunkAtATime() {
+        addRange(5);
+        assertEquals(8, integers.capacity());
+        addRange(100);
+        assertEquals(108, integers.capacity());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, (int) integers.get(i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeChunkShift() {
+        new SegmentedUnorderedArray<>(-1);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Add and retrieval tests">
+    @Test
+    public void addAllAcrossChunks() {
+        integers.add(-1);
+        Integer[] array = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+        integers.addAll(array, 1, 8);
+        assertEquals(9, integers.size());
+        for (int i = 1; i < 9; i++) {
+            assertEquals(i, (int) integers.get(i));
+        }
+        assertEquals(-1, (int) integers.first());
+        assertEquals(8, (int) integers.last());
+    }
+
+    @Test
+    public void insert() {
+        addRange(4);
+        integers.insert(1, 10);
+        assertEquals(10, (int) integers.get(1));
+        assertEquals(1, (int) integers.get(4));
+        assertEquals(5, integers.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfBounds() {
+        addRange(4);
+        integers.get(4);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void firstEmpty() {
+        integers.first();
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Search tests">
+    @Test
+    public void indexOfAcrossChunks() {
+        addRange(10);
+        integers.add(null);
+        assertEquals(9, integers.indexOf(9));
+        assertEquals(10, integers.indexOf(null));
+        assertEquals(NOT_IN_ARRAY, integers.indexOf(10));
+        assertEquals(6, integers.indexOfIdentity(6));
+        assertTrue(integers.containsAll(0, 5, 9, null));
+        assertFalse(integers.containsIdentity(1000));
+    }
+
+    @Test
+    public void count() {
+        integers.addAll(1, 2, 1, 1, 3, 1, null);
+        assertEquals(4, integers.count(1));
+        assertEquals(1, integers.count(null));
+        assertEquals(0, integers.count(4));
+        assertEquals(1, integers.countIdentity(2));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Remove tests">
+    @Test
+    public void removeIndexSwapsWithGlobalLast() {
+        addRange(10);
+        assertEquals(1, (int) integers.removeIndex(1));
+        assertEquals(9, (int) integers.get(1));
+        assertEquals(9, integers.size());
+    }
+
+    @Test
+    public void removeLast() {
+        addRange(5);
+        assertEquals(4, (int) integers.removeIndex(4));
+        assertEquals(3, (int) integers.last());
+    }
+
+    @Test
+    public void removeValue() {
+        addRange(6);
+        assertTrue(integers.removeValue(2));
+        assertFalse(integers.removeValue(2));
+        assertTrue(integers.removeValueIdentity(5));
+        assertEquals(4, integers.size());
+    }
+
+    @Test
+    public void clearKeepsChunks() {
+        addRange(10);
+        integers.clear();
+        assertTrue(integers.isEmpty());
+        assertEquals(12, integers.capacity());
+        integers.add(1);
+        assertEquals(1, (int) integers.get(0));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Iteration, equality and hashCode tests">
+    @Test
+    public void iterationVisitsEveryItem() {
+        addRange(10);
+        int sum = 0;
+        for (int v : integers) {
+            sum += v;
+        }
+        assertEquals(45, sum);
+    }
+
+    @Test
+    public void iteratorRemoveVisitsSwappedItem() {
+        addRange(10);
+        Iterator<Integer> iterator = integers.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(5, integers.size());
+        for (int v : integers) {
+            assertEquals(1, v % 2);
+        }
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void addWhileIterating() {
+        addRange(3);
+        for (int ignored : integers) {
+            integers.add(1);
+        }
+    }
+
+    @Test
+    public void equality() {
+        integers.addAll(1, 2, null, 2, 3);
+        SegmentedUnorderedArray<Integer> other = new SegmentedUnorderedArray<>();
+        other.addAll(2, 3, 2, 1);
+        assertNotEquals(integers, other);
+        other.add(null);
+        assertEquals(integers, other);
+        other.removeValue(3);
+        other.add(1);
+        assertNotEquals(integers, other);
+    }
+
+    @Test
+    public void hash() {
+        integers.addAll(10, 30, 50);
+        assertEquals(90, integers.hashCode());
+    }
+
+    @Test
+    public void hashWithNull() {
+        integers.addAll(10, null, 30, 50, null);
+        assertEquals(90, integers.hashCode());
+    }
+    //</editor-fold>
+}
@@ -0,0 +1,376 @@
+package bdsm.simple;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.function.IntToLongFunction;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Performance contracts of the {@link UnorderedArray} and {@link SegmentedUnorderedArray} hot paths.
+ * Allocation is measured with the per-thread allocation counter of the JVM,
+ * time complexity by the ratio of the best running times at two sizes that are far apart.
+ * Both are kept coarse on purpose: they exist to catch an extra allocation per call or an O(n) turning O(n^2),
+ * not a few percent of slowdown. A failing ratio is measured once more before the test fails,
+ * so that a burst of load on the machine does not fail the build.
+ */
+public class UnorderedArrayPerformanceTest {
+    private static final int OPERATIONS = 100_000;
+    // Tolerates the odd object allocated by the measurement itself, but not one per operation.
+    private static final long ALLOCATION_SLACK = 1024;
+    private static final int SMALL_SIZE = 1 << 12;
+    private static final int LARGE_SIZE = 1 << 18;
+    private static final int REPETITIONS = 11;
+    private static final int WARMUP_ROUNDS = 3;
+    // The sizes are 64x apart: O(1) stays around 1x, O(n) around 64x, O(n^2) around 4096x.
+    private static final double CONSTANT_EXPONENT = 0.5;
+    private static final double LINEAR_EXPONENT = 1.5;
+    // Hash tables outgrow the caches at the large size, so every probe there costs more: about n^1.3 when idle,
+    // n^1.6 on a loaded machine. Quadratic is still n^2.
+    private static final double HASHED_LINEAR_EXPONENT = 1.75;
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // Boxed once up front, so that autoboxing is not blamed on the array.
+    private final Integer[] values = new Integer[OPERATIONS];
+    private final Integer[] scalingValues = new Integer[2 * LARGE_SIZE];
+    private volatile Object sink;
+    private volatile int intSink;
+
+    @Before
+    public void setUp() {
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        for (int i = 0; i < OPERATIONS; i++) {
+            values[i] = i + 1000;
+        }
+        for (int i = 0; i < scalingValues.length; i++) {
+            scalingValues[i] = i < OPERATIONS ? values[i] : Integer.valueOf(i + 1000);
+        }
+    }
+
+    //<editor-fold desc="Measurement helpers">
+    private long allocatedBytes() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private long allocationOf(Runnable operation) {
+        // The first run pays for class loading and lazy initialisation.
+        operation.run();
+        long before = allocatedBytes();
+        operation.run();
+        return allocatedBytes() - before;
+    }
+
+    private void assertAllocationFree(String operation, Runnable body) {
+        long bytes = allocationOf(body);
+        assertTrue(operation + " allocated " + bytes + " bytes", bytes <= ALLOCATION_SLACK);
+    }
+
+    private UnorderedArray<Integer> filled(int size) {
+        UnorderedArray<Integer> array = new UnorderedArray<>(size);
+        for (int i = 0; i < size; i++) {
+            array.add(scalingValues[i]);
+        }
+        return array;
+    }
+
+    private interface SizedOperation {
+        void run(UnorderedArray<Integer> array, int size);
+    }
+
+    /**
+     * The best of several runs: noise only ever adds time, so the minimum is the most stable estimate.
+     * The body runs on the same array every time, so it must leave the array at the same size.
+     */
+    private long minimumNanos(SizedOperation operation, UnorderedArray<Integer> array, int size) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            long start = System.nanoTime();
+            operation.run(array, size);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return Math.max(1, best);
+    }
+
+    /**
+     * k in time ~ size^k, from the best running times at {@link #SMALL_SIZE} and {@link #LARGE_SIZE}.
+     *
+     * @param bestNanos the best running time at a size
+     */
+    private double scalingExponent(IntToLongFunction bestNanos) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            bestNanos.applyAsLong(SMALL_SIZE);
+            bestNanos.applyAsLong(LARGE_SIZE);
+        }
+        double ratio = (double) bestNanos.applyAsLong(LARGE_SIZE) / bestNanos.applyAsLong(SMALL_SIZE);
+        return Math.log(ratio) / Math.log((double) LARGE_SIZE / SMALL_SIZE);
+    }
+
+    private void assertScaling(String operation, double maxExponent, IntToLongFunction bestNanos) {
+        double exponent = scalingExponent(bestNanos);
+        if (exponent > maxExponent) {
+            exponent = scalingExponent(bestNanos);
+        }
+        assertTrue(operation + " scales as n^" + exponent, exponent <= maxExponent);
+    }
+
+    private void assertScaling(String operation, double maxExponent, SizedOperation body) {
+        UnorderedArray<Integer> small = filled(SMALL_SIZE);
+        UnorderedArray<Integer> large = filled(LARGE_SIZE);
+        assertScaling(operation, maxExponent,
+                size -> minimumNanos(body, size == SMALL_SIZE ? small : large, size));
+    }
+
+    /**
+     * The best time of the add that grows a segmented array of the given size, which is a multiple of the chunk size.
+     * Every repetition fills a fresh array outside the measurement, so that the add really allocates a chunk.
+     */
+    private long growingSegmentedAddNanos(int size) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPETITIONS; r++) {
+            SegmentedUnorderedArray<Integer> array = new SegmentedUnorderedArray<>();
+            array.addAll(scalingValues, 0, size);
+            long start = System.nanoTime();
+            array.add(scalingValues[size]);
+            best = Math.min(best, System.nanoTime() - start);
+            sink = array;
+        }
+        return Math.max(1, best);
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Allocation contracts">
+    @Test
+    public void addWithinCapacityDoesNotAllocate() {
+        UnorderedArray<Integer> array = new UnorderedArray<>(OPERATIONS);
+        assertAllocationFree("add", () -> {
+            array.clear();
+            for (Integer value : values) {
+                array.add(value);
+            }
+        });
+    }
+
+    @Test
+    public void getDoesNotAllocate() {
+        UnorderedArray<Integer> array = filled(OPERATIONS);
+        assertAllocationFree("get", () -> {
+            for (int i = 0; i < OPERATIONS; i++) {
+                sink = array.get(i);
+            }
+        });
+    }
+
+    @Test
+    public void removeIndexDoesNotAllocate() {
+        UnorderedArray<Integer> array = new UnorderedArray<>(OPERATIONS);
+        assertAllocationFree("removeIndex", () -> {
+            array.addAll(values);
+            while (array.isNotEmpty()) {
+                sink = array.removeIndex(0);
+            }
+        });
+    }
+
+    @Test
+    public void indexOfDoesNotAllocate() {
+        UnorderedArray<Integer> array = filled(1000);
+        assertAllocationFree("indexOf", () -> {
+            for (int i = 0; i < 2000; i++) {
+                intSink = array.indexOf(values[i]);
+            }
+        });
+    }
+
+    @Test
+    public void indexOfWithBloomFilterDoesNotAllocate() {
+        UnorderedArray<Integer> array = filled(1000);
+        array.enableBloomFilter();
+        assertAllocationFree("indexOf with a Bloom filter", () -> {
+            for (int i = 0; i < 2000; i++) {
+                intSink = array.indexOf(values[i]);
+            }
+        });
+    }
+
+    @Test
+    public void iterationAllocatesOnlyTheIterator() {
+        UnorderedArray<Integer> array = filled(OPERATIONS);
+        assertAllocationFree("iteration", () -> {
+            for (Integer value : array) {
+                sink = value;
+            }
+        });
+    }
+
+    @Test
+    public void filteringThroughTheIteratorAllocatesOnlyTheIterator() {
+        UnorderedArray<Integer> array = new UnorderedArray<>(OPERATIONS);
+        assertAllocationFree("iterator removal", () -> {
+            array.addAll(values);
+            Iterator<Integer> iterator = array.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() % 2 == 0) {
+                    iterator.remove();
+                }
+            }
+            array.clear();
+        });
+    }
+
+    @Test
+    public void reorderingDoesNotAllocate() {
+        UnorderedArray<Integer> array = filled(OPERATIONS);
+        Comparator<Integer> order = Comparator.naturalOrder();
+        assertAllocationFree("partition, nth and topK", () -> {
+            intSink = array.partition(value -> value % 2 == 0);
+            sink = array.nth(OPERATIONS / 2, order);
+            array.topK(100, order);
+        });
+    }
+
+    @Test
+    public void repeatedDedupeDoesNotAllocate() {
+        UnorderedArray<Integer> array = new UnorderedArray<>(OPERATIONS);
+        assertAllocationFree("dedupe and distinctCount", () -> {
+            array.clear();
+            array.addAll(values, 0, OPERATIONS / 2);
+            array.addAll(values, 0, OPERATIONS / 2);
+            intSink = array.distinctCount();
+            intSink = array.dedupe();
+        });
+    }
+
+    @Test
+    public void repeatedInPlaceMultisetOperationsDoNotAllocate() {
+        UnorderedArray<Integer> array = new UnorderedArray<>(OPERATIONS);
+        UnorderedArray<Integer> other = new UnorderedArray<>(values, OPERATIONS / 4, OPERATIONS / 2);
+        assertAllocationFree("in-place union, intersection and difference", () -> {
+            array.clear();
+            array.addAll(values, 0, OPERATIONS / 2);
+            intSink = array.intersectionInPlace(other);
+            array.unionInPlace(other);
+            intSink = array.differenceInPlace(other);
+            array.unionInPlaceIdentity(other);
+            intSink = array.intersectionInPlaceIdentity(other);
+        });
+    }
+
+    @Test
+    public void segmentedAddAllocatesOnlyChunks() {
+        long bytes = allocationOf(() -> {
+            SegmentedUnorderedArray<Integer> array = new SegmentedUnorderedArray<>();
+            for (int i = 0; i < LARGE_SIZE; i++) {
+                array.add(scalingValues[i]);
+            }
+            sink = array;
+        });
+        // A reference per item for the chunks, and per chunk its header and its share of the directory copies.
+        int chunks = LARGE_SIZE >> SegmentedUnorderedArray.DEFAULT_CHUNK_SHIFT;
+        long bound = (long) LARGE_SIZE * Long.BYTES + chunks * 4L * Long.BYTES + ALLOCATION_SLACK;
+        assertTrue("segmented add allocated " + bytes + " bytes", bytes <= bound);
+    }
+
+    @Test
+    public void hashCodeDoesNotAllocate() {
+        UnorderedArray<Integer> array = filled(OPERATIONS);
+        assertAllocationFree("hashCode", () -> intSink = array.hashCode());
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Complexity contracts">
+    @Test
+    public void getIsConstant() {
+        assertScaling("get", CONSTANT_EXPONENT, (array, size) -> {
+            for (int i = 0; i < 1000; i++) {
+                sink = array.get(i);
+            }
+        });
+    }
+
+    @Test
+    public void removeIndexIsConstant() {
+        assertScaling("removeIndex", CONSTANT_EXPONENT, (array, size) -> {
+            for (int i = 0; i < 1000; i++) {
+                array.add(array.removeIndex(i));
+            }
+        });
+    }
+
+    @Test
+    public void addIsAmortisedConstant() {
+        assertScaling("add", LINEAR_EXPONENT, (array, size) -> {
+            array.clear();
+            for (int i = 0; i < size; i++) {
+                array.add(scalingValues[i]);
+            }
+        });
+    }
+
+    @Test
+    public void slowestSegmentedAddIsConstant() {
+        assertScaling("growing segmented add", CONSTANT_EXPONENT, this::growingSegmentedAddNanos);
+    }
+
+    @Test
+    public void indexOfMissIsLinear() {
+        Integer absent = -1;
+        assertScaling("indexOf", LINEAR_EXPONENT, (array, size) -> intSink = array.indexOf(absent));
+    }
+
+    @Test
+    public void iterationIsLinear() {
+        assertScaling("iteration", LINEAR_EXPONENT, (array, size) -> {
+            for (Integer value : array) {
+                sink = value;
+            }
+        });
+    }
+
+    @Test
+    public void filteringThroughTheIteratorIsLinear() {
+        assertScaling("iterator removal", LINEAR_EXPONENT, (array, size) -> {
+            Iterator<Integer> iterator = array.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next() % 2 == 0) {
+                    iterator.remove();
+                }
+            }
+            array.addAll(scalingValues, 0, size - array.size());
+        });
+    }
+
+    @Test
+    public void nthIsLinear() {
+        Comparator<Integer> order = Comparator.naturalOrder();
+        assertScaling("nth", LINEAR_EXPONENT, (array, size) -> sink = array.nth(size / 2, order));
+    }
+
+    @Test
+    public void dedupeIsLinear() {
+        assertScaling("dedupe", HASHED_LINEAR_EXPONENT, (array, size) -> {
+            array.addAll(scalingValues, 0, size / 2);
+            intSink = array.dedupe();
+        });
+    }
+
+    @Test
+    public void diffIsLinear() {
+        // Built up front, so that only diff itself and the arrays it returns are timed.
+        UnorderedArray<Integer> smallDesired = new UnorderedArray<>(scalingValues, SMALL_SIZE / 2, SMALL_SIZE);
+        UnorderedArray<Integer> largeDesired = new UnorderedArray<>(scalingValues, LARGE_SIZE / 2, LARGE_SIZE);
+        assertScaling("diff", HASHED_LINEAR_EXPONENT,
+                (array, size) -> sink = array.diff(size == SMALL_SIZE ? smallDesired : largeDesired));
+    }
+
+    @Test
+    public void hashCodeIsLinear() {
+        assertScaling("hashCode", LINEAR_EXPONENT, (array, size) -> intSink = array.hashCode());
+    }
+    //</editor-fold>
+}
@@ -3,7 +3,12 @@ package bdsm.simple;
 import beans.Person;
 import org.junit.Test;
 
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
 
 import static bdsm.simple.UnorderedArray.DEFAULT_SIZE;
 import static bdsm.simple.UnorderedArray.NOT_IN_ARRAY;
@@ -200,6 +205,18 @@ public class UnorderedArrayTest {
             assertEquals(array.get(i + start), integers.get(i + oldSize));
         }
     }
+
+    @Test
+    public void addAllBeyondOneGrowthStep() {
+        Integer[] array = new Integer[10 * DEFAULT_SIZE];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = i;
+        }
+        integers.enableBloomFilter();
+        integers.addAll(array);
+        assertEquals(array.length, integers.size());
+        assertTrue(integers.contains(array.length - 1));
+    }
     //</editor-fold>
 
     //<editor-fold desc="Retrieval tests">
@@ -349,6 +366,266 @@ public class UnorderedArrayTest {
         assertEquals(2, people.count(null));
     }
 
+    //<editor-fold desc="Distinct items tests">
+    @Test
+    public void dedupe() {
+        integers.addAll(10, 20, 10, null, 30, 20, null, 10);
+        assertEquals(4, integers.distinctCount());
+        assertEquals(4, integers.dedupe());
+        assertEquals(4, integers.size());
+        UnorderedArray<Integer> expected = new UnorderedArray<>();
+        expected.addAll(10, 20, null, 30);
+        assertEquals(expected, integers);
+        assertEquals(0, integers.dedupe());
+    }
+
+    @Test
+    public void dedupeIdentity() {
+        people.addAll(george, futureGeorge, george, null, null);
+        assertEquals(3, people.distinctCountIdentity());
+        assertEquals(2, people.dedupeIdentity());
+        assertEquals(1, people.countIdentity(george));
+        assertEquals(1, people.countIdentity(futureGeorge));
+        assertEquals(1, people.countIdentity(null));
+    }
+
+    @Test
+    public void dedupeManyWithReusedTable() {
+        for (int i = 0; i < 10_000; i++) {
+            integers.add(i % 1000);
+        }
+        assertEquals(9000, integers.dedupe());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1, integers.count(i));
+        }
+        integers.clear();
+        integers.addAll(1, 1, 2);
+        assertEquals(2, integers.distinctCount());
+    }
+
+    @Test
+    public void dedupeKeepsBloomFilterInSync() {
+        integers.enableBloomFilter();
+        integers.addAll(5, 5, 6);
+        integers.dedupe();
+        integers.removeValue(5);
+        assertFalse(integers.contains(5));
+        assertTrue(integers.contains(6));
+    }
+
+    @Test
+    public void histogram() {
+        integers.addAll(10, 20, 10, null, 10);
+        FrequencyHistogram<Integer> histogram = integers.histogram();
+        assertEquals(3, histogram.size());
+        assertEquals(3, histogram.countOf(10));
+        assertEquals(1, histogram.countOf(20));
+        assertEquals(1, histogram.countOf(null));
+        assertEquals(0, histogram.countOf(30));
+        int total = 0;
+        for (int i = 0; i < histogram.size(); i++) {
+            total += histogram.count(i);
+            assertEquals(histogram.count(i), integers.count(histogram.key(i)));
+        }
+        assertEquals(integers.size(), total);
+    }
+
+    @Test
+    public void histogramIdentity() {
+        people.addAll(george, futureGeorge, george);
+        FrequencyHistogram<Person> histogram = people.histogramIdentity();
+        assertTrue(histogram.isIdentity());
+        assertEquals(2, histogram.size());
+        assertEquals(2, histogram.countOf(george));
+        assertEquals(0, histogram.countOf(new Person("George", 23)));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Multiset operations tests">
+    private UnorderedArray<Integer> arrayOf(Integer... values) {
+        UnorderedArray<Integer> array = new UnorderedArray<>();
+        array.addAll(values);
+        return array;
+    }
+
+    @Test
+    public void union() {
+        integers.addAll(1, 1, 2, null);
+        UnorderedArray<Integer> union = integers.union(arrayOf(1, 2, 2, 3));
+        assertEquals(arrayOf(1, 1, 2, 2, 3, null), union);
+        assertEquals(4, integers.size());
+    }
+
+    @Test
+    public void intersection() {
+        integers.addAll(1, 1, 2, null, 4);
+        assertEquals(arrayOf(1, 2, null), integers.intersection(arrayOf(null, 1, 2, 2, 3)));
+    }
+
+    @Test
+    public void difference() {
+        integers.addAll(1, 1, 2, null, 4);
+        assertEquals(arrayOf(1, 4), integers.difference(arrayOf(null, 1, 2, 2, 3)));
+    }
+
+    @Test
+    public void inPlaceForms() {
+        integers.addAll(1, 1, 2, 3);
+        integers.unionInPlace(arrayOf(1, 4));
+        assertEquals(arrayOf(1, 1, 2, 3, 4), integers);
+        assertEquals(2, integers.intersectionInPlace(arrayOf(1, 3, 4, 4, 5)));
+        assertEquals(arrayOf(1, 3, 4), integers);
+        assertEquals(1, integers.differenceInPlace(arrayOf(3, 6)));
+        assertEquals(arrayOf(1, 4), integers);
+    }
+
+    @Test
+    public void unionInPlaceThatGrowsTheArray() {
+        integers.addAll(1, 2);
+        UnorderedArray<Integer> other = new UnorderedArray<>();
+        for (int i = 0; i < 5 * DEFAULT_SIZE; i++) {
+            other.add(i % 3);
+        }
+        integers.unionInPlace(other);
+        assertEquals(5 * DEFAULT_SIZE, integers.size());
+        assertEquals(other.count(1), integers.count(1));
+        integers.intersectionInPlace(arrayOf(0, 1, 2));
+        assertEquals(arrayOf(0, 1, 2), integers);
+    }
+
+    @Test
+    public void withItself() {
+        integers.addAll(1, 1, 2);
+        integers.unionInPlace(integers);
+        assertEquals(3, integers.size());
+        assertEquals(0, integers.intersectionInPlace(integers));
+        assertEquals(3, integers.differenceInPlace(integers));
+        assertTrue(integers.isEmpty());
+    }
+
+    @Test
+    public void diff() {
+        integers.addAll(1, 1, 2, 3);
+        MultisetDiff<Integer> diff = integers.diff(arrayOf(1, 3, 3, 4));
+        assertEquals(arrayOf(3, 4), diff.added());
+        assertEquals(arrayOf(1, 2), diff.removed());
+        assertFalse(diff.isEmpty());
+        integers.differenceInPlace(diff.removed());
+        integers.addAll(diff.added());
+        assertTrue(integers.diff(arrayOf(1, 3, 3, 4)).isEmpty());
+    }
+
+    @Test
+    public void identityForms() {
+        people.addAll(george, george, futureGeorge);
+        UnorderedArray<Person> others = new UnorderedArray<>();
+        others.addAll(george, new Person("George", 23));
+        assertEquals(1, people.intersectionIdentity(others).size());
+        assertEquals(1, people.differenceIdentity(others).countIdentity(george));
+        assertEquals(4, people.unionIdentity(others).size());
+        MultisetDiff<Person> diff = people.diffIdentity(others);
+        assertEquals(1, diff.added().size());
+        assertEquals(2, diff.removed().size());
+        people.unionInPlaceIdentity(others);
+        assertEquals(0, people.differenceInPlaceIdentity(new UnorderedArray<>()));
+        assertEquals(2, people.intersectionInPlaceIdentity(others));
+    }
+
+    @Test
+    public void multisetOperationsKeepBloomFilterInSync() {
+        integers.enableBloomFilter();
+        integers.addAll(1, 2, 3);
+        integers.differenceInPlace(arrayOf(2));
+        assertFalse(integers.contains(2));
+        integers.unionInPlace(arrayOf(5));
+        assertTrue(integers.contains(5));
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Reordering tests">
+    @Test
+    public void partition() {
+        integers.addAll(1, 2, 3, 4, 5, 6, 7);
+        int split = integers.partition(v -> v % 3 == 0);
+        assertEquals(2, split);
+        assertEquals(7, integers.size());
+        for (int i = 0; i < integers.size(); i++) {
+            assertEquals(i < split, integers.get(i) % 3 == 0);
+        }
+    }
+
+    @Test
+    public void partitionNoneOrAll() {
+        integers.addAll(1, 2, 3);
+        assertEquals(0, integers.partition(v -> false));
+        assertEquals(3, integers.partition(v -> true));
+    }
+
+    @Test
+    public void nth() {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            integers.add(random.nextInt(50));
+        }
+        for (int k : new int[]{0, 1, 499, 998, 999}) {
+            int value = integers.nth(k, Comparator.naturalOrder());
+            assertEquals(value, (int) integers.get(k));
+            for (int i = 0; i < integers.size(); i++) {
+                int comparison = Integer.compare(integers.get(i), value);
+                assertTrue(i < k ? comparison <= 0 : comparison >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void nthAllEqual() {
+        for (int i = 0; i < 100; i++) {
+            integers.add(5);
+        }
+        assertEquals(5, (int) integers.nth(50, Comparator.naturalOrder()));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void nthOutOfBounds() {
+        integers.addAll(1, 2);
+        integers.nth(2, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void topK() {
+        integers.addAll(9, 4, 7, 1, 8, 2, 6);
+        integers.topK(3, Comparator.reverseOrder());
+        UnorderedArray<Integer> top = new UnorderedArray<>();
+        top.addAll(integers, 0, 3);
+        UnorderedArray<Integer> expected = new UnorderedArray<>();
+        expected.addAll(9, 8, 7);
+        assertEquals(expected, top);
+        integers.topK(10, Comparator.naturalOrder());
+        assertEquals(7, integers.size());
+        integers.topK(0, Comparator.naturalOrder());
+        assertEquals(7, integers.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void topKNegative() {
+        integers.addAll(3, 1, 2);
+        integers.topK(-1, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void minAndMax() {
+        integers.addAll(3, -4, 10, 0);
+        assertEquals(-4, (int) integers.min(Comparator.naturalOrder()));
+        assertEquals(10, (int) integers.max(Comparator.naturalOrder()));
+        assertEquals(4, integers.size());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void minEmpty() {
+        integers.min(Comparator.naturalOrder());
+    }
+    //</editor-fold>
+
     //<editor-fold desc="Equality and hashCode checks">
     @Test
     public void equalityIdentities() {
@@ -383,6 +660,67 @@ public class UnorderedArrayTest {
         integers.removeIndex(2);
         assertEquals(40, integers.hashCode());
     }
+
+    @Test
+    public void hashWithNull() {
+        integers.addAll(10, null, 30, 50, null);
+        assertEquals(90, integers.hashCode());
+        SegmentedUnorderedArray<Integer> segmented = new SegmentedUnorderedArray<>();
+        segmented.addAll(null, 50, 10, null, 30);
+        assertEquals(segmented.hashCode(), integers.hashCode());
+    }
+    //</editor-fold>
+
+    //<editor-fold desc="Bloom filter tests">
+    @Test
+    public void bloomFilterDisabledByDefault() {
+        assertFalse(integers.isBloomFilterEnabled());
+        assertEquals(0, integers.bloomFilterFalsePositiveRate(), 0);
+    }
+
+    @Test
+    public void bloomFilterLookups() {
+        integers.add(10, 20, null);
+        integers.enableBloomFilter();
+        assertTrue(integers.isBloomFilterEnabled());
+        assertTrue(integers.contains(10));
+        assertTrue(integers.contains(null));
+        assertFalse(integers.contains(30));
+        assertEquals(1, integers.indexOf(20));
+        assertEquals(NOT_IN_ARRAY, integers.indexOf(40));
+        assertEquals(1, integers.count(null));
+        assertEquals(0, integers.count(50));
+        assertTrue(integers.containsAll(10, 20));
+        assertFalse(integers.containsAll(10, 30));
+    }
+
+    @Test
+    public void bloomFilterFollowsMutations() {
+        integers.enableBloomFilter();
+        integers.add(10, 20);
+        integers.insert(0, 30);
+        integers.addAll(40, 50);
+        assertTrue(integers.containsAll(10, 20, 30, 40, 50));
+        integers.removeValue(30);
+        assertFalse(integers.contains(30));
+        integers.clear();
+        assertFalse(integers.contains(10));
+    }
+
+    @Test
+    public void bloomFilterSurvivesExpansion() {
+        integers.enableBloomFilter();
+        for (int i = 0; i < 10 * DEFAULT_SIZE; i++) {
+            integers.add(i);
+        }
+        for (int i = 0; i < 10 * DEFAULT_SIZE; i++) {
+            assertTrue(integers.contains(i));
+        }
+        for (int i = 10 * DEFAULT_SIZE; i < 20 * DEFAULT_SIZE; i++) {
+            assertFalse(integers.contains(i));
+        }
+        assertTrue(integers.bloomFilterFalsePositiveRate() < 0.2);
+    }
     //</editor-fold>
 
     @Test
@@ -396,4 +734,63 @@ public class UnorderedArrayTest {
             assertTrue(vals.contains(v));
         }
     }
+
+    //<editor-fold desc="Iterator removal tests">
+    @Test
+    public void iteratorRemoveVisitsSwappedItem() {
+        integers.add(1, 2, 4, 6);
+        Iterator<Integer> iterator = integers.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+        assertEquals(1, integers.size());
+        assertEquals(1, (int) integers.first());
+    }
+
+    @Test
+    public void iteratorRemoveLast() {
+        integers.add(1, 2);
+        Iterator<Integer> iterator = integers.iterator();
+        iterator.next();
+        iterator.next();
+        iterator.remove();
+        assertFalse(iterator.hasNext());
+        assertEquals(1, integers.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void iteratorRemoveBeforeNext() {
+        integers.add(1);
+        integers.iterator().remove();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void iteratorRemoveTwice() {
+        integers.add(1, 2);
+        Iterator<Integer> iterator = integers.iterator();
+        iterator.next();
+        iterator.remove();
+        iterator.remove();
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void iteratorNextPastEnd() {
+        integers.add(1);
+        Iterator<Integer> iterator = integers.iterator();
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void removeIndexWhileIterating() {
+        integers.add(1, 2, 3);
+        for (int v : integers) {
+            if (v == 1) {
+                integers.removeIndex(0);
+            }
+        }
+    }
+    //</editor-fold>
 }
\ No newline at end of file
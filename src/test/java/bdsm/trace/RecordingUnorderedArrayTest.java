@@ -0,0 +1,189 @@
+package bdsm.trace;
+
+import bdsm.simple.UnorderedArray;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Comparator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordingUnorderedArrayTest {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    TraceWriter writer = new TraceWriter(bytes);
+    RecordingUnorderedArray<String> strings = new RecordingUnorderedArray<>(writer);
+
+    private Trace recorded() throws IOException {
+        writer.close();
+        return Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void recordsOperationsWithSizesAndOutcomes() throws IOException {
+        strings.add("a");
+        strings.add(null);
+        strings.contains("a");
+        strings.contains("b");
+        strings.removeIndex(1);
+        Trace trace = recorded();
+        assertEquals(5, trace.length());
+        assertEquals(Operation.ADD, trace.operation(0));
+        assertEquals(0, trace.size(0));
+        assertEquals((Integer) "a".hashCode(), trace.value(0));
+        assertEquals(Operation.ADD, trace.operation(1));
+        assertNull(trace.value(1));
+        assertEquals(Operation.CONTAINS, trace.operation(2));
+        assertTrue(trace.hit(2));
+        assertFalse(trace.hit(3));
+        assertEquals(Operation.REMOVE_INDEX, trace.operation(4));
+        assertEquals(2, trace.size(4));
+        assertEquals(1, trace.argument(4));
+    }
+
+    @Test
+    public void nestedOperationsAreRecordedOnce() throws IOException {
+        strings.addAll("a", "b");
+        strings.removeValue("a");
+        Trace trace = recorded();
+        assertEquals(4, trace.length());
+        assertEquals(Operation.ADD_ALL, trace.operation(0));
+        assertEquals(2, trace.argument(0));
+        assertEquals(Operation.VALUE, trace.operation(1));
+        assertEquals(Operation.VALUE, trace.operation(2));
+        assertEquals(Operation.REMOVE_VALUE, trace.operation(3));
+        assertTrue(trace.hit(3));
+    }
+
+    @Test
+    public void recordsMutatorsThatBypassAdd() throws IOException {
+        strings.addAll("a", "a", "b", "c");
+        UnorderedArray<String> other = new UnorderedArray<>(new String[]{"b", "d"});
+        assertEquals(1, strings.dedupe());
+        assertEquals(1, strings.differenceInPlace(other));
+        strings.unionInPlace(other);
+        strings.topK(1, Comparator.naturalOrder());
+        Trace trace = recorded();
+        assertEquals(Operation.DEDUPE, trace.operation(5));
+        assertEquals(4, trace.size(5));
+        assertEquals(1, trace.argument(5));
+        assertEquals(Operation.DIFFERENCE_IN_PLACE, trace.operation(6));
+        assertEquals(2, trace.argument(6));
+        assertEquals((Integer) "b".hashCode(), trace.value(7));
+        assertEquals((Integer) "d".hashCode(), trace.value(8));
+        // The adds that unionInPlace makes are part of it.
+        assertEquals(Operation.UNION_IN_PLACE, trace.operation(9));
+        assertTrue(trace.hit(9));
+        assertEquals(Operation.TOP_K, trace.operation(12));
+        assertEquals(13, trace.length());
+    }
+
+    @Test
+    public void selfDifferenceRecordsTheItemsBefore() throws IOException {
+        strings.addAll("a", "b");
+        assertEquals(2, strings.differenceInPlace(strings));
+        Trace trace = recorded();
+        assertEquals(Operation.DIFFERENCE_IN_PLACE, trace.operation(3));
+        assertEquals(2, trace.argument(3));
+        assertEquals(6, trace.length());
+    }
+
+    @Test
+    public void stillBehavesAsAnUnorderedArray() {
+        strings.add("a", "b", "c");
+        assertTrue(strings.removeValue("b"));
+        assertEquals(2, strings.size());
+        assertEquals(1, strings.count("c"));
+        assertEquals(5, writer.records());
+    }
+
+    @Test
+    public void fixedArityAddsAreRecordedAsAdds() throws IOException {
+        strings.add("a", "b");
+        strings.add("c", null, "d", "e");
+        Trace trace = recorded();
+        assertEquals(6, trace.length());
+        for (int record = 0; record < trace.length(); record++) {
+            assertEquals(Operation.ADD, trace.operation(record));
+            assertEquals(record, trace.size(record));
+        }
+        assertEquals((Integer) "b".hashCode(), trace.value(1));
+        assertNull(trace.value(3));
+    }
+
+    @Test
+    public void recordsTheOtherSideOfEquals() throws IOException {
+        strings.add("a");
+        assertTrue(strings.equals(strings));
+        assertFalse(strings.equals(new UnorderedArray<>(new String[]{"a", "b"})));
+        assertFalse(strings.equals("a"));
+        Trace trace = recorded();
+        assertEquals(RecordingUnorderedArray.EQUALS_SELF, trace.argument(1));
+        assertEquals(2, trace.argument(2));
+        assertEquals(UnorderedArray.NOT_IN_ARRAY, trace.argument(3));
+    }
+
+    @Test
+    public void sameHashCodeReplaysAsSameValue() throws IOException {
+        strings.add("x");
+        strings.indexOfIdentity("x");
+        Trace trace = recorded();
+        assertTrue(trace.value(0) == trace.value(1));
+    }
+
+    @Test
+    public void recordsHowFarIterationsGo() throws IOException {
+        strings.addAll("a", "b", "c", "d");
+        for (String item : strings) {
+            if (item.equals("b")) {
+                break;
+            }
+        }
+        strings.clear();
+        Trace trace = recorded();
+        assertEquals(Operation.ITERATE, trace.operation(5));
+        assertEquals(4, trace.size(5));
+        assertEquals(2, trace.argument(5));
+        assertFalse(trace.hit(5));
+        assertEquals(Operation.CLEAR, trace.operation(6));
+    }
+
+    @Test
+    public void fullIterationIsWrittenAtTheEnd() throws IOException {
+        strings.addAll("a", "b");
+        for (String ignored : strings) {
+            assertEquals(3, writer.records());
+        }
+        assertEquals(4, writer.records());
+        Trace trace = recorded();
+        assertEquals(2, trace.argument(3));
+        assertTrue(trace.hit(3));
+    }
+
+    @Test
+    public void flushWritesAnUnfinishedIteration() throws IOException {
+        strings.addAll("a", "b");
+        strings.iterator().next();
+        strings.flush();
+        Trace trace = recorded();
+        assertEquals(4, trace.length());
+        assertEquals(1, trace.argument(3));
+    }
+
+    @Test
+    public void version1IterationsAreFull() throws IOException {
+        byte[] version1 = {0x55, 0x41, 0x54, 0x52, 1, (byte) (Operation.ITERATE.ordinal() | TraceWriter.HIT_FLAG), 3, 0};
+        Trace trace = Trace.read(new ByteArrayInputStream(version1));
+        assertEquals(Operation.ITERATE, trace.operation(0));
+        assertEquals(Integer.MAX_VALUE, trace.argument(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsForeignFiles() throws IOException {
+        Trace.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+    }
+}
@@ -0,0 +1,148 @@
+package bdsm.trace;
+
+import bdsm.simple.SegmentedUnorderedArray;
+import bdsm.simple.UnorderedArray;
+import bdsm.simple.UnorderedCollection;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceReplayTest {
+    @Test
+    public void replaysEveryOperation() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter writer = new TraceWriter(bytes)) {
+            RecordingUnorderedArray<Integer> integers = new RecordingUnorderedArray<>(writer);
+            for (int i = 0; i < 100; i++) {
+                integers.add(i);
+                integers.contains(i / 2);
+            }
+            integers.insert(3, 7);
+            integers.addAll(1, 2, 3);
+            integers.removeIndex(5);
+            integers.removeValue(50);
+            integers.equals(new UnorderedArray<>(integers));
+            integers.hashCode();
+            for (Integer ignored : integers) {
+                integers.get(0);
+            }
+            integers.clear();
+        }
+        Trace trace = Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        ReplayReport report = new TraceReplay(trace).replay("test", UnorderedArray::new);
+        // VALUE records belong to the ADD_ALL and INSERT before them.
+        assertEquals(trace.length() - 4, report.operations());
+        assertTrue(report.p50() <= report.p99());
+        assertTrue(report.p99() <= report.max());
+        assertTrue(report.throughput() > 0);
+    }
+
+    @Test
+    public void replaysBulkAddsLargerThanTheDefaultCapacity() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter writer = new TraceWriter(bytes)) {
+            RecordingUnorderedArray<Integer> integers = new RecordingUnorderedArray<>(1000, writer);
+            Integer[] values = new Integer[500];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = i;
+            }
+            integers.addAll(values);
+        }
+        Trace trace = Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(500, trace.maxSize());
+        TraceReplay replay = new TraceReplay(trace);
+        assertEquals(1, replay.replay("default", UnorderedArray::new).operations());
+        assertEquals(1, replay.replay("presized", () -> new UnorderedArray<>(trace.maxSize())).operations());
+        assertEquals(1, replay.replay("bloom", () -> {
+            UnorderedArray<Integer> array = new UnorderedArray<>();
+            array.enableBloomFilter();
+            return array;
+        }).operations());
+    }
+
+    @Test
+    public void maxSizeIsThePeakAfterEachOperation() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter writer = new TraceWriter(bytes)) {
+            RecordingUnorderedArray<Integer> integers = new RecordingUnorderedArray<>(writer);
+            integers.add(1);
+            integers.insert(0, 2);
+            integers.removeIndex(0);
+            integers.addAll(3, 4, 5);
+        }
+        assertEquals(4, Trace.read(new ByteArrayInputStream(bytes.toByteArray())).maxSize());
+    }
+
+    @Test
+    public void equalsReplaysTheRecordedOutcome() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceWriter writer = new TraceWriter(bytes)) {
+            RecordingUnorderedArray<Integer> integers = new RecordingUnorderedArray<>(writer);
+            integers.add(1, 2, 3);
+            integers.equals(integers);
+            integers.equals(new UnorderedArray<>(new Integer[]{1, 2}));
+            integers.equals(new UnorderedArray<>(new Integer[]{1, 2, 4}));
+            integers.equals(new UnorderedArray<>(new Integer[]{3, 2, 1}));
+            integers.equals("1, 2, 3");
+        }
+        Trace trace = Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        List<Object> compared = new ArrayList<>();
+        Supplier<UnorderedCollection<Integer>> factory = () -> new UnorderedArray<Integer>() {
+            @Override
+            public boolean equals(Object obj) {
+                boolean equal = super.equals(obj);
+                compared.add(equal);
+                return equal;
+            }
+        };
+        new TraceReplay(trace).replay("test", factory);
+        List<Object> lastRun = compared.subList(compared.size() - 5, compared.size());
+        assertEquals(Arrays.asList(true, false, false, true, false), lastRun);
+    }
+
+    @Test
+    public void keepsInStepWithMutatorsThatBypassAdd() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        RecordingUnorderedArray<Integer> integers;
+        try (TraceWriter writer = new TraceWriter(bytes)) {
+            integers = new RecordingUnorderedArray<>(writer);
+            for (int i = 0; i < 100; i++) {
+                integers.add(i % 30);
+            }
+            integers.dedupe();
+            integers.intersectionInPlace(new UnorderedArray<>(new Integer[]{1, 2, 3, 40}));
+            integers.unionInPlace(new UnorderedArray<>(new Integer[]{3, 3, 50}));
+            integers.differenceInPlaceIdentity(new UnorderedArray<>(new Integer[]{1}));
+            integers.partition(value -> value > 2);
+            integers.nth(1, Comparator.naturalOrder());
+            integers.topK(2, Comparator.naturalOrder());
+        }
+        Trace trace = Trace.read(new ByteArrayInputStream(bytes.toByteArray()));
+        List<UnorderedCollection<Integer>> replayed = new ArrayList<>();
+        Supplier<UnorderedCollection<Integer>> unordered = () -> {
+            UnorderedArray<Integer> array = new UnorderedArray<>();
+            replayed.add(array);
+            return array;
+        };
+        Supplier<UnorderedCollection<Integer>> segmented = () -> {
+            SegmentedUnorderedArray<Integer> array = new SegmentedUnorderedArray<>(2);
+            replayed.add(array);
+            return array;
+        };
+        new TraceReplay(trace).replay("unordered", unordered);
+        new TraceReplay(trace).replay("segmented", segmented);
+        for (UnorderedCollection<Integer> array : replayed) {
+            assertEquals(integers.size(), array.size());
+        }
+    }
+}